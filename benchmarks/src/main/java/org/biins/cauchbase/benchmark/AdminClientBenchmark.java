@@ -0,0 +1,63 @@
+package org.biins.cauchbase.benchmark;
+
+import com.couchbase.cbadmin.assets.Bucket;
+import com.couchbase.cbadmin.assets.NodeList;
+import com.couchbase.cbadmin.client.AdminClientConfig;
+import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
+import com.couchbase.cbadmin.client.RestApiException;
+import com.google.gson.JsonElement;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests of the admin client against a {@link ClusterStub} of 100 to 10,000 buckets and nodes, with the tree
+ * and the streaming parser. {@code getJson} reads the bucket listing without mapping it to buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ClusterStub.NODELAY)
+public class AdminClientBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean streamingParse;
+
+    private ClusterStub stub;
+    private CouchbaseAdminImpl client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = new ClusterStub(size, size);
+        client = new CouchbaseAdminImpl(stub.getUrl(), "Administrator", "password",
+                new AdminClientConfig().streamingParse(streamingParse));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public JsonElement getJson() throws IOException, RestApiException {
+        return client.getJson("/pools/default/buckets");
+    }
+
+    @Benchmark
+    public Map<String, Bucket> getBuckets() throws RestApiException {
+        return client.getBuckets();
+    }
+
+    @Benchmark
+    public NodeList getNodes() throws RestApiException {
+        return client.getNodes();
+    }
+}
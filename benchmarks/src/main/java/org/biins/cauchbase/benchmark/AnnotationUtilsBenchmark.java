@@ -0,0 +1,39 @@
+package org.biins.cauchbase.benchmark;
+
+import org.biins.cauchbase.AnnotationUtils;
+import org.biins.cauchbase.metadata.ClassMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the annotations of {@link SampleViews}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationUtilsBenchmark {
+
+    private Annotation[] annotations;
+
+    @Setup
+    public void setUp() {
+        annotations = SampleViews.class.getAnnotations();
+    }
+
+    @Benchmark
+    public Map<Class<?>, List<Annotation>> annotationsByTypes() {
+        return AnnotationUtils.annotationsByTypes(annotations);
+    }
+
+    @Benchmark
+    public ClassMetadata metadataOf() {
+        return AnnotationUtils.metadataOf(SampleViews.class);
+    }
+}
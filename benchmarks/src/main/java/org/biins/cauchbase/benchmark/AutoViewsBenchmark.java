@@ -0,0 +1,60 @@
+package org.biins.cauchbase.benchmark;
+
+import com.couchbase.cbadmin.client.AdminClientConfig;
+import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
+import org.biins.cauchbase.AutoViews;
+import org.biins.cauchbase.DeploymentPlan;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boot time provisioning of {@link SampleViews} against a {@link ClusterStub} with {@code size} buckets.
+ * The design document is up to date after the first invocation, so {@code setup} measures the common
+ * case of an application start: listing buckets and comparing the design document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ClusterStub.NODELAY)
+public class AutoViewsBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean streamingParse;
+
+    private ClusterStub stub;
+    private CouchbaseAdminImpl client;
+    private AutoViews autoViews;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = new ClusterStub(size, size);
+        client = new CouchbaseAdminImpl(stub.getUrl(), "Administrator", "password",
+                new AdminClientConfig().streamingParse(streamingParse));
+        autoViews = new AutoViews(client);
+        autoViews.setup(SampleViews.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public void setup() {
+        autoViews.setup(SampleViews.class);
+    }
+
+    @Benchmark
+    public DeploymentPlan plan() {
+        return autoViews.plan(Collections.<Class<?>>singletonList(SampleViews.class));
+    }
+}
@@ -0,0 +1,136 @@
+package org.biins.cauchbase.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server answering the admin requests of the benchmarks on a loopback port.
+ * <p>
+ * Bucket and node listings are served from prebuilt {@link Fixtures}, design documents are kept in memory.
+ * Other paths answer 404.
+ * <p>
+ * The JDK server leaves Nagle's algorithm on and every response would stall for ~40ms, the benchmarks using
+ * the stub fork with {@value #NODELAY}.
+ */
+public class ClusterStub implements Closeable {
+
+    public static final String NODELAY = "-Dsun.net.httpserver.nodelay=true";
+
+    private static final String DESIGN_PATH = "/couchBase/";
+    private static final byte[] NOT_FOUND = bytes("{\"error\":\"not_found\",\"reason\":\"missing\"}");
+    private static final byte[] OK = bytes("{\"ok\":true}");
+
+    private final byte[] buckets;
+    private final byte[] nodes;
+    private final Map<String, byte[]> designs = new ConcurrentHashMap<>();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public ClusterStub(int buckets, int nodes) throws IOException {
+        this.buckets = bytes(Fixtures.buckets(buckets));
+        this.nodes = bytes(Fixtures.nodes(nodes));
+
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "cluster-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public URL getUrl() {
+        try {
+            return new URL("http", "127.0.0.1", server.getAddress().getPort(), "/");
+        }
+        catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stores the design document as if it was written by a client.
+     */
+    public void putDesignDocument(String bucket, String design, String document) {
+        designs.put(DESIGN_PATH + bucket + "/_design/" + design, bytes(document));
+    }
+
+    public void clearDesignDocuments() {
+        designs.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/pools/default/buckets")) {
+                respond(exchange, 200, buckets);
+            }
+            else if (path.equals("/pools/nodes")) {
+                respond(exchange, 200, nodes);
+            }
+            else if (path.startsWith(DESIGN_PATH) && path.contains("/_design/")) {
+                handleDesign(exchange, method, path);
+            }
+            else {
+                respond(exchange, 404, NOT_FOUND);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleDesign(HttpExchange exchange, String method, String path) throws IOException {
+        switch (method) {
+            case "GET":
+                byte[] document = designs.get(path);
+                respond(exchange, document != null ? 200 : 404, document != null ? document : NOT_FOUND);
+                break;
+            case "PUT":
+                designs.put(path, IOUtils.toByteArray(exchange.getRequestBody()));
+                respond(exchange, 201, OK);
+                break;
+            case "DELETE":
+                boolean removed = designs.remove(path) != null;
+                respond(exchange, removed ? 200 : 404, removed ? OK : NOT_FOUND);
+                break;
+            default:
+                respond(exchange, 405, NOT_FOUND);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
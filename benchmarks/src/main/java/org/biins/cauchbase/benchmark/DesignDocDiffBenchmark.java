@@ -0,0 +1,56 @@
+package org.biins.cauchbase.benchmark;
+
+import com.couchbase.cbadmin.client.DesignDocDiff;
+import com.couchbase.cbadmin.client.ViewConfig;
+import com.couchbase.cbadmin.client.ViewConfigBuilder;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparing and merging design documents, the server's copy has {@code size} views, the definition
+ * changes one of them and adds one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DesignDocDiffBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private ViewConfig config;
+    private JsonObject current;
+
+    @Setup
+    public void setUp() {
+        ViewConfigBuilder server = new ViewConfigBuilder("sample", Fixtures.bucketName(0));
+        for (int i = 0; i < size; i++) {
+            server.view("view_" + i, map(i));
+        }
+        current = server.build().getDefinition();
+
+        config = new ViewConfigBuilder("sample", Fixtures.bucketName(0))
+                .view("view_0", map(-1))
+                .view("view_new", map(size))
+                .build();
+    }
+
+    private static String map(int i) {
+        return "function (doc, meta) {\n  if (doc.type == 'type_" + i + "') {\n    emit(meta.id, null);\n  }\n}";
+    }
+
+    @Benchmark
+    public DesignDocDiff compute() {
+        return DesignDocDiff.compute(config, current);
+    }
+
+    @Benchmark
+    public JsonObject merge() {
+        return DesignDocDiff.merge(current, config.getDefinition());
+    }
+}
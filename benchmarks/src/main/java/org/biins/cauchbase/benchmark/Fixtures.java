@@ -0,0 +1,86 @@
+package org.biins.cauchbase.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cluster responses of a given size, built from a bucket and a node recorded from a live cluster
+ * ({@code fixtures/bucket.json}, {@code fixtures/node.json}).
+ * <p>
+ * Bucket {@code i} is named {@code bucket-i}, node {@code i} listens on its own address. Every copy
+ * keeps all the fields of the recording, so parsers skip as much JSON as they would on a real cluster.
+ */
+public final class Fixtures {
+
+    public static final String BUCKET_PREFIX = "bucket-";
+
+    private static final String BUCKET = load("fixtures/bucket.json");
+    private static final String NODE = load("fixtures/node.json");
+
+    private Fixtures() {
+    }
+
+    public static String bucketName(int i) {
+        return BUCKET_PREFIX + i;
+    }
+
+    /**
+     * @return response of {@code GET /pools/default/buckets}
+     */
+    public static String buckets(int count) {
+        JsonParser parser = new JsonParser();
+        JsonArray buckets = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            JsonObject bucket = parser.parse(BUCKET).getAsJsonObject();
+            String name = bucketName(i);
+            bucket.addProperty("name", name);
+            bucket.addProperty("uri", "/pools/default/buckets/" + name);
+            bucket.addProperty("streamingUri", "/pools/default/bucketsStreaming/" + name);
+            buckets.add(bucket);
+        }
+        return buckets.toString();
+    }
+
+    /**
+     * @return response of {@code GET /pools/nodes}
+     */
+    public static String nodes(int count) {
+        JsonParser parser = new JsonParser();
+        JsonArray nodes = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            JsonObject node = parser.parse(NODE).getAsJsonObject();
+            String address = address(i);
+            node.addProperty("hostname", address + ":8091");
+            node.addProperty("couchApiBase", "http://" + address + ":8092/");
+            node.addProperty("otpNode", "ns_1@" + address);
+            node.addProperty("thisNode", i == 0);
+            nodes.add(node);
+        }
+        JsonObject pool = new JsonObject();
+        pool.addProperty("name", "default");
+        pool.add("nodes", nodes);
+        return pool.toString();
+    }
+
+    private static String address(int i) {
+        return "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+    }
+
+    private static String load(String resource) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + resource);
+            }
+            return IOUtils.toString(in, StandardCharsets.UTF_8.name());
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Can't read fixture " + resource, e);
+        }
+    }
+}
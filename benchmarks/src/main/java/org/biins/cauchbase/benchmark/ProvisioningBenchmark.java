@@ -0,0 +1,57 @@
+package org.biins.cauchbase.benchmark;
+
+import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
+import org.biins.cauchbase.AutoViews;
+import org.biins.cauchbase.mock.Fault;
+import org.biins.cauchbase.mock.MockCluster;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First provisioning of {@link SampleViews} against a {@link MockCluster}: the design document doesn't exist
+ * and is written. {@code latency} is added to every request, in millis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ClusterStub.NODELAY)
+public class ProvisioningBenchmark {
+
+    @Param({"0", "5"})
+    public long latency;
+
+    private MockCluster cluster;
+    private CouchbaseAdminImpl client;
+    private AutoViews autoViews;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cluster = new MockCluster().start();
+        cluster.createBucket(Fixtures.bucketName(0));
+        if (latency > 0) {
+            cluster.addFault(new Fault("/").latency(latency));
+        }
+        client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password");
+        autoViews = new AutoViews(client);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearDesignDocuments() {
+        cluster.clearDesignDocuments();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        cluster.close();
+    }
+
+    @Benchmark
+    public void setup() {
+        autoViews.setup(SampleViews.class);
+    }
+}
@@ -0,0 +1,27 @@
+package org.biins.cauchbase.benchmark;
+
+import com.couchbase.cbadmin.assets.Bucket.BucketType;
+import org.biins.cauchbase.Bucket;
+import org.biins.cauchbase.View;
+
+/**
+ * Annotated class provisioned by the benchmarks, its bucket is the first bucket of the {@link Fixtures}.
+ */
+@Bucket(name = "bucket-0", design = "sample", type = BucketType.COUCHBASE)
+@View(name = "all", map = "function (doc, meta) { emit(meta.id, null); }")
+public class SampleViews {
+
+    @View(name = "by_type", map = "function (doc, meta) { if (doc.type) { emit(doc.type, null); } }")
+    public void byType() {
+    }
+
+    @View(name = "by_created", map = "function (doc, meta) { if (doc.created) { emit(dateToArray(doc.created), null); } }")
+    public void byCreated() {
+    }
+
+    @View(name = "count_by_type",
+            map = "function (doc, meta) { if (doc.type) { emit(doc.type, null); } }",
+            reduce = "_count")
+    public void countByType() {
+    }
+}
@@ -22,7 +22,12 @@
 
 package com.couchbase.cbadmin.assets;
 
+import com.couchbase.cbadmin.client.RestApiException;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
 
 /**
  * Class representing a bucket as it exists within the cluster.
@@ -40,12 +45,60 @@ public class Bucket {
     rawJson = def;
     name = rawJson.get("name").getAsString();
     replicas = rawJson.get("replicaNumber").getAsInt();
-    String sType = rawJson.get("bucketType").getAsString();
+    type = parseType(rawJson.get("bucketType").getAsString());
+  }
+
+  private Bucket(String name, int replicas, BucketType type) {
+    this.rawJson = null;
+    this.name = name;
+    this.replicas = replicas;
+    this.type = type;
+  }
+
+  /**
+   * Reads a bucket from a stream positioned at the bucket's JSON object.
+   * Only the fields used by this class are kept unless
+   * {@code retainRawJson} is set.
+   *
+   * @param reader The reader
+   * @param retainRawJson whether {@link #getRawJson()} should be available
+   * @return the bucket
+   */
+  public static Bucket read(JsonReader reader, boolean retainRawJson)
+          throws IOException, RestApiException {
+    if (retainRawJson) {
+      return new Bucket(new JsonParser().parse(reader).getAsJsonObject());
+    }
+
+    String name = null;
+    Integer replicas = null;
+    String sType = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+      if (field.equals("name")) {
+        name = reader.nextString();
+      } else if (field.equals("replicaNumber")) {
+        replicas = reader.nextInt();
+      } else if (field.equals("bucketType")) {
+        sType = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (name == null || replicas == null || sType == null) {
+      throw new RestApiException("Expected 'name', 'replicaNumber' and 'bucketType'");
+    }
+    return new Bucket(name, replicas, parseType(sType));
+  }
 
+  private static BucketType parseType(String sType) {
     if (sType.equals("membase") || sType.equals("couchbase")) {
-      type = BucketType.COUCHBASE;
+      return BucketType.COUCHBASE;
     } else {
-      type = BucketType.MEMCACHED;
+      return BucketType.MEMCACHED;
     }
   }
 
@@ -57,6 +110,9 @@ public class Bucket {
     return replicas;
   }
 
+  /**
+   * @return the bucket's JSON, or null if it was not retained
+   */
   public JsonObject getRawJson() {
     return rawJson;
   }
@@ -26,9 +26,13 @@ import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
 import com.couchbase.cbadmin.client.RestApiException;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -101,75 +105,134 @@ public class Node implements ClusterAsset {
     return true;
   }
 
+  /**
+   * @return the node's JSON, or null if it was not retained
+   */
   @Override
   public JsonObject getRawJson() {
     return rawJson;
   }
 
   public Node(JsonObject def) throws RestApiException {
-    JsonElement eTmp;
-    String sTmp;
-    eTmp = def.get("hostname");
-    if (eTmp == null) {
-      throw new RestApiException("Expected 'hostname'", def);
+    rawJson = def;
+    init(getString(def, "hostname"),
+         getString(def, "couchApiBase"),
+         getString(def, "version"),
+         getString(def, "otpNode"),
+         def.has("clusterCompatibility") ? def.get("clusterCompatibility").getAsInt() : null,
+         getString(def, "clusterMembership"),
+         getString(def, "status"));
+  }
+
+  private Node() {
+  }
+
+  /**
+   * Reads a node from a stream positioned at the node's JSON object.
+   * Only the fields used by this class are kept unless
+   * {@code retainRawJson} is set.
+   *
+   * @param reader The reader
+   * @param retainRawJson whether {@link #getRawJson()} should be available
+   * @return the node
+   */
+  public static Node read(JsonReader reader, boolean retainRawJson)
+          throws IOException, RestApiException {
+    if (retainRawJson) {
+      return new Node(new JsonParser().parse(reader).getAsJsonObject());
+    }
+
+    String hostname = null, couchApiBase = null, version = null, otpNode = null;
+    String clusterMembership = null, nodeStatus = null;
+    Integer clusterCompatibility = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+      } else if (field.equals("hostname")) {
+        hostname = reader.nextString();
+      } else if (field.equals("couchApiBase")) {
+        couchApiBase = reader.nextString();
+      } else if (field.equals("version")) {
+        version = reader.nextString();
+      } else if (field.equals("otpNode")) {
+        otpNode = reader.nextString();
+      } else if (field.equals("clusterCompatibility")) {
+        clusterCompatibility = reader.nextInt();
+      } else if (field.equals("clusterMembership")) {
+        clusterMembership = reader.nextString();
+      } else if (field.equals("status")) {
+        nodeStatus = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    Node node = new Node();
+    node.init(hostname, couchApiBase, version, otpNode, clusterCompatibility,
+              clusterMembership, nodeStatus);
+    return node;
+  }
+
+  private static String getString(JsonObject def, String name) {
+    JsonElement eTmp = def.get(name);
+    return eTmp == null || eTmp.isJsonNull() ? null : eTmp.getAsString();
+  }
+
+  private void init(String hostname, String couchApiBase, String version,
+                    String otpNode, Integer compat, String sMembership,
+                    String sStatus) throws RestApiException {
+    if (hostname == null) {
+      throw new RestApiException("Expected 'hostname'", rawJson);
     }
-    sTmp = eTmp.getAsString();
 
     try {
-      restUrl = new URL("http://" + sTmp + "/");
+      restUrl = new URL("http://" + hostname + "/");
     } catch (MalformedURLException ex) {
       throw new RuntimeException(ex);
     }
 
-    eTmp = def.get("couchApiBase");
-    if (eTmp != null) {
+    if (couchApiBase != null) {
       try {
-        sTmp = eTmp.getAsString();
-        couchUrl = new URL(sTmp);
+        couchUrl = new URL(couchApiBase);
       } catch (MalformedURLException ex) {
         throw new RuntimeException(ex);
       }
     }
 
-    eTmp = def.get("version");
-    if (eTmp == null) {
-      throw new RestApiException("Expected 'version' in nodes JSON", def);
+    if (version == null) {
+      throw new RestApiException("Expected 'version' in nodes JSON", rawJson);
     }
-    versionString = eTmp.getAsString();
+    versionString = version;
 
-    eTmp = def.get("otpNode");
-    if (eTmp == null) {
-      throw new RestApiException("Expected 'otpNode'", def);
+    if (otpNode == null) {
+      throw new RestApiException("Expected 'otpNode'", rawJson);
     }
-    NSOtpNode = eTmp.getAsString();
+    NSOtpNode = otpNode;
 
-    eTmp = def.get("clusterCompatibility");
-    if (eTmp != null) {
-      clusterCompatVersion = eTmp.getAsInt();
+    if (compat != null) {
+      clusterCompatVersion = compat;
     }
 
-    eTmp = def.get("clusterMembership");
-    if (eTmp != null) {
-      sTmp = eTmp.getAsString();
-
-      if (sTmp.equals("active")) {
+    if (sMembership != null) {
+      if (sMembership.equals("active")) {
         membership = Membership.ACTIVE;
-      } else if (sTmp.equals("inactiveAdded")) {
+      } else if (sMembership.equals("inactiveAdded")) {
         membership = Membership.INACTIVE_ADDED;
 
-      } else if (sTmp.equals("inactiveFailed")) {
+      } else if (sMembership.equals("inactiveFailed")) {
         membership = Membership.INACTIVE_FAILED;
       }
     }
 
-    eTmp = def.get("status");
-    if (eTmp != null) {
-      sTmp = eTmp.getAsString();
-      if (sTmp.equals("healthy")) {
+    if (sStatus != null) {
+      if (sStatus.equals("healthy")) {
         status = Status.HEALTHY;
-      } else if (sTmp.equals("unhealthy")) {
+      } else if (sStatus.equals("unhealthy")) {
         status = Status.UNHEALTHY;
-      } else if (sTmp.equals("warmup")) {
+      } else if (sStatus.equals("warmup")) {
         status = Status.WARMUP;
       }
     }
@@ -27,7 +27,9 @@ import com.couchbase.cbadmin.client.RestApiException;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -75,6 +77,54 @@ public final class NodeGroup {
     }
   }
 
+  private NodeGroup(String name, URI uri) {
+    this.name = name;
+    this.uri = uri;
+  }
+
+  /**
+   * Reads a group from a stream positioned at the group's JSON object.
+   *
+   * @param reader The reader
+   * @param retainRawJson whether the nodes should retain their JSON
+   * @return the group
+   */
+  public static NodeGroup read(JsonReader reader, boolean retainRawJson)
+          throws IOException, RestApiException {
+    String name = null;
+    String uri = null;
+    List<Node> nodes = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+      if (field.equals("name")) {
+        name = reader.nextString();
+      } else if (field.equals("uri")) {
+        uri = reader.nextString();
+      } else if (field.equals("nodes")) {
+        nodes = new ArrayList<Node>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          nodes.add(Node.read(reader, retainRawJson));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (name == null) {
+      throw new IllegalArgumentException("Malformed JSON");
+    }
+    if (nodes == null) {
+      throw new IllegalArgumentException("Node list was empty");
+    }
+    NodeGroup group = new NodeGroup(name, getFromString(uri));
+    group.nodes.addAll(nodes);
+    return group;
+  }
+
   public String getName() {
     return name;
   }
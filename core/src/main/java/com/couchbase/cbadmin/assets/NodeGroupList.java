@@ -25,14 +25,19 @@ package com.couchbase.cbadmin.assets;
 import com.couchbase.cbadmin.client.RestApiException;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public final class NodeGroupList {
   private final Collection<NodeGroup> groups;
   private final URI assignmentUri;
+  private final Map<String,NodeGroup> byName = new HashMap<String, NodeGroup>();
 
   public NodeGroupList(JsonObject json) throws RestApiException {
     JsonElement e = json.get("uri");
@@ -53,6 +58,59 @@ public final class NodeGroupList {
       }
       groups.add(new NodeGroup(groupElem.getAsJsonObject()));
     }
+    index();
+  }
+
+  private void index() {
+    for (NodeGroup group : groups) {
+      if (!byName.containsKey(group.getName())) {
+        byName.put(group.getName(), group);
+      }
+    }
+  }
+
+  private NodeGroupList(URI assignmentUri, Collection<NodeGroup> groups) {
+    this.assignmentUri = assignmentUri;
+    this.groups = groups;
+    index();
+  }
+
+  /**
+   * Reads the group list from a stream positioned at its JSON object.
+   *
+   * @param reader The reader
+   * @param retainRawJson whether the nodes should retain their JSON
+   * @return the group list
+   */
+  public static NodeGroupList read(JsonReader reader, boolean retainRawJson)
+          throws IOException, RestApiException {
+    String uri = null;
+    Collection<NodeGroup> groups = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+      if (field.equals("uri")) {
+        uri = reader.nextString();
+      } else if (field.equals("groups")) {
+        groups = new ArrayList<NodeGroup>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          groups.add(NodeGroup.read(reader, retainRawJson));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (uri == null) {
+      throw new RestApiException("Expected modification URI");
+    }
+    if (groups == null) {
+      throw new RestApiException("Expected 'groups'");
+    }
+    return new NodeGroupList(URI.create(uri), groups);
   }
 
   public URI getAssignmentUri() {
@@ -64,12 +122,7 @@ public final class NodeGroupList {
   }
 
   public NodeGroup find(String name) {
-    for (NodeGroup group : groups) {
-      if (group.getName().equals(name)) {
-        return group;
-      }
-    }
-    return null;
+    return byName.get(name);
   }
 
 }
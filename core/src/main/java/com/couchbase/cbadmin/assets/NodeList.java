@@ -0,0 +1,75 @@
+package com.couchbase.cbadmin.assets;
+
+import java.util.*;
+
+/**
+ * Immutable list of the nodes of a cluster, indexed for lookups by
+ * {@code host:port}, by host and by {@code otpNode}.
+ * <p>
+ * The indexes are built once when the list is created, i.e. once per fetch
+ * of the node list.
+ */
+public final class NodeList extends AbstractList<Node> implements RandomAccess {
+  private final List<Node> nodes;
+  private final Map<String,Node> byHostPort = new HashMap<String, Node>();
+  private final Map<String,Node> byOtpNode = new HashMap<String, Node>();
+  private final Map<String,List<Node>> byHost = new HashMap<String, List<Node>>();
+
+  public NodeList(Collection<Node> nodes) {
+    this.nodes = new ArrayList<Node>(nodes);
+    for (Node node : this.nodes) {
+      String host = node.getRestUrl().getHost();
+      if (!byHostPort.containsKey(hostPort(host, node.getRestUrl().getPort()))) {
+        byHostPort.put(hostPort(host, node.getRestUrl().getPort()), node);
+      }
+      if (!byOtpNode.containsKey(node.getNSOtpNode())) {
+        byOtpNode.put(node.getNSOtpNode(), node);
+      }
+      List<Node> hostNodes = byHost.get(host);
+      if (hostNodes == null) {
+        hostNodes = new ArrayList<Node>(1);
+        byHost.put(host, hostNodes);
+      }
+      hostNodes.add(node);
+    }
+  }
+
+  private static String hostPort(String host, int port) {
+    return host + ":" + port;
+  }
+
+  /**
+   * @return the node with the REST API at the given host and port, or null
+   */
+  public Node findByHostPort(String host, int port) {
+    return byHostPort.get(hostPort(host, port));
+  }
+
+  /**
+   * @return the nodes with the REST API at the given host, possibly empty
+   */
+  public List<Node> findByHost(String host) {
+    List<Node> hostNodes = byHost.get(host);
+    if (hostNodes == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(hostNodes);
+  }
+
+  /**
+   * @return the node with the given {@code otpNode} name, or null
+   */
+  public Node findByOtpNode(String otpNode) {
+    return byOtpNode.get(otpNode);
+  }
+
+  @Override
+  public Node get(int index) {
+    return nodes.get(index);
+  }
+
+  @Override
+  public int size() {
+    return nodes.size();
+  }
+}
@@ -0,0 +1,281 @@
+package com.couchbase.cbadmin.client;
+
+/**
+ * Connection settings of a {@link CouchbaseAdminImpl}.
+ * <p>
+ * All durations are in milliseconds. A timeout of 0 means no timeout.
+ */
+public class AdminClientConfig {
+  private int maxConnectionsTotal = 20;
+  private int maxConnectionsPerRoute = 10;
+  private int connectTimeout = 10000;
+  private int socketTimeout = 60000;
+  private int connectionRequestTimeout = 30000;
+  private long keepAlive = 30000;
+  private long idleTimeout = 60000;
+  private boolean streamingParse = false;
+  private boolean retainRawJson = false;
+  private long topologyCacheTtl = 0;
+  private long topologyWaitChange = 0;
+  private AdminMetrics metrics = AdminMetrics.NONE;
+  private RetryPolicy retryPolicy = new RetryPolicy();
+  private int circuitFailureThreshold = 5;
+  private long circuitOpenTimeout = 30000;
+  private long balancerRefresh = 0;
+  private int ejectAfter = 3;
+  private long ejectionTime = 10000;
+  private long maxEjectionTime = 300000;
+  private int conflictAttempts = 5;
+
+  /**
+   * @param max The maximal number of pooled connections to all hosts
+   */
+  public AdminClientConfig maxConnectionsTotal(int max) {
+    maxConnectionsTotal = max;
+    return this;
+  }
+
+  /**
+   * @param max The maximal number of pooled connections to a single host
+   */
+  public AdminClientConfig maxConnectionsPerRoute(int max) {
+    maxConnectionsPerRoute = max;
+    return this;
+  }
+
+  /**
+   * @param timeout time to establish a connection
+   */
+  public AdminClientConfig connectTimeout(int timeout) {
+    connectTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * @param timeout maximal inactivity while waiting for data
+   */
+  public AdminClientConfig socketTimeout(int timeout) {
+    socketTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * @param timeout time to wait for a free connection from the pool
+   */
+  public AdminClientConfig connectionRequestTimeout(int timeout) {
+    connectionRequestTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * @param keepAlive how long a connection may be reused when the server
+   *                  does not send a {@code Keep-Alive} header
+   */
+  public AdminClientConfig keepAlive(long keepAlive) {
+    this.keepAlive = keepAlive;
+    return this;
+  }
+
+  /**
+   * @param timeout pooled connections idle for longer are closed. 0
+   *                disables the eviction.
+   */
+  public AdminClientConfig idleTimeout(long timeout) {
+    idleTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * Parses bucket, node and group listings directly from the response
+   * stream, keeping only the fields the returned objects use.
+   */
+  public AdminClientConfig streamingParse(boolean streaming) {
+    streamingParse = streaming;
+    return this;
+  }
+
+  /**
+   * Keeps the JSON of each bucket and node in streaming parse mode, so
+   * {@code getRawJson()} is available.
+   */
+  public AdminClientConfig retainRawJson(boolean retain) {
+    retainRawJson = retain;
+    return this;
+  }
+
+  /**
+   * Caches node, bucket and group listings.
+   *
+   * @param ttl time to keep the listings. 0 disables the cache.
+   * @see TopologyCache
+   */
+  public AdminClientConfig topologyCacheTtl(long ttl) {
+    topologyCacheTtl = ttl;
+    return this;
+  }
+
+  /**
+   * Long-polls the cluster for topology changes and invalidates the cache
+   * when the pool etag changes. Requires {@link #topologyCacheTtl(long)}.
+   *
+   * @param waitChange how long the server holds each poll. Must be shorter
+   *                   than the socket timeout. 0 disables watching.
+   */
+  public AdminClientConfig watchTopology(long waitChange) {
+    topologyWaitChange = waitChange;
+    return this;
+  }
+
+  /**
+   * Records latency, status and size of every request.
+   *
+   * @param metrics the hook, e.g. an {@link EndpointMetrics}. null disables
+   *                recording.
+   */
+  public AdminClientConfig metrics(AdminMetrics metrics) {
+    this.metrics = metrics != null ? metrics : AdminMetrics.NONE;
+    return this;
+  }
+
+  /**
+   * @param policy The retry policy of idempotent requests. null disables
+   *               retries.
+   */
+  public AdminClientConfig retryPolicy(RetryPolicy policy) {
+    retryPolicy = policy != null ? policy : RetryPolicy.NONE;
+    return this;
+  }
+
+  /**
+   * Fails requests to a node fast while it is consistently down.
+   *
+   * @param failureThreshold consecutive failures opening the circuit. 0
+   *                         disables the circuit breaker.
+   * @param openTimeout time before a trial request is let through
+   * @see CircuitBreaker
+   */
+  public AdminClientConfig circuitBreaker(int failureThreshold, long openTimeout) {
+    circuitFailureThreshold = failureThreshold;
+    circuitOpenTimeout = openTimeout;
+    return this;
+  }
+
+  /**
+   * Routes cluster wide requests to the fastest healthy node instead of the
+   * entry point. Requests concerning the entry point node itself, e.g.
+   * {@code /pools} or {@code /settings/web}, always go to the entry point.
+   *
+   * @param refreshInterval how often the node list is refreshed. 0 disables
+   *                        the balancing.
+   * @see NodeBalancer
+   */
+  public AdminClientConfig loadBalancing(long refreshInterval) {
+    balancerRefresh = refreshInterval;
+    return this;
+  }
+
+  /**
+   * @param after consecutive failures ejecting a node from the balancing
+   * @param time time of the first ejection, doubled by each following one
+   * @param maxTime maximal ejection time
+   */
+  public AdminClientConfig ejection(int after, long time, long maxTime) {
+    ejectAfter = after;
+    ejectionTime = time;
+    maxEjectionTime = maxTime;
+    return this;
+  }
+
+  /**
+   * @param attempts The maximal number of attempts to write a design
+   *                 document changed concurrently by another client,
+   *                 including the first one
+   */
+  public AdminClientConfig conflictAttempts(int attempts) {
+    if (attempts < 1) {
+      throw new IllegalArgumentException("At least one attempt is needed");
+    }
+    conflictAttempts = attempts;
+    return this;
+  }
+
+  public int getMaxConnectionsTotal() {
+    return maxConnectionsTotal;
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  public int getConnectionRequestTimeout() {
+    return connectionRequestTimeout;
+  }
+
+  public long getKeepAlive() {
+    return keepAlive;
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  public boolean isStreamingParse() {
+    return streamingParse;
+  }
+
+  public boolean isRetainRawJson() {
+    return retainRawJson;
+  }
+
+  public long getTopologyCacheTtl() {
+    return topologyCacheTtl;
+  }
+
+  public long getTopologyWaitChange() {
+    return topologyWaitChange;
+  }
+
+  public AdminMetrics getMetrics() {
+    return metrics;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public int getCircuitFailureThreshold() {
+    return circuitFailureThreshold;
+  }
+
+  public long getCircuitOpenTimeout() {
+    return circuitOpenTimeout;
+  }
+
+  public long getBalancerRefresh() {
+    return balancerRefresh;
+  }
+
+  public int getEjectAfter() {
+    return ejectAfter;
+  }
+
+  public long getEjectionTime() {
+    return ejectionTime;
+  }
+
+  public long getMaxEjectionTime() {
+    return maxEjectionTime;
+  }
+
+  public int getConflictAttempts() {
+    return conflictAttempts;
+  }
+}
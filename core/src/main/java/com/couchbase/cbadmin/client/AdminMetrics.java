@@ -0,0 +1,91 @@
+package com.couchbase.cbadmin.client;
+
+/**
+ * Receives the outcome of every request made by a {@link CouchbaseAdminImpl}.
+ * <p>
+ * Requests are keyed by their logical endpoint, the method and the path with
+ * bucket, design document, view and group names replaced by placeholders,
+ * e.g. {@code GET /couchBase/{bucket}/_design/{design}}. Methods are called
+ * on the requesting thread and must be thread safe and cheap.
+ *
+ * @see EndpointMetrics
+ */
+public interface AdminMetrics {
+  AdminMetrics NONE = new AdminMetrics() {
+  };
+
+  /**
+   * Called after the response body was read.
+   *
+   * @param endpoint The logical endpoint
+   * @param status The HTTP status code
+   * @param latencyNanos time from sending the request until the body was read
+   * @param bytesOut size of the request body
+   * @param bytesIn size of the response body
+   */
+  default void onResponse(String endpoint, int status, long latencyNanos, long bytesOut, long bytesIn) {
+  }
+
+  /**
+   * Called when no response was received, e.g. on a connect or socket timeout.
+   */
+  default void onFailure(String endpoint, long latencyNanos, long bytesOut) {
+  }
+
+  /**
+   * Called before a request is retried.
+   */
+  default void onRetry(String endpoint) {
+  }
+
+  /**
+   * Builds the logical endpoint of a request.
+   *
+   * @param method The HTTP method
+   * @param path The request path, the query string is ignored
+   */
+  static String endpoint(String method, String path) {
+    StringBuilder sb = new StringBuilder(method.length() + path.length() + 16);
+    sb.append(method).append(' ');
+    int query = path.indexOf('?');
+    int end = query < 0 ? path.length() : query;
+    String placeholder = null;
+    int start = 0;
+    while (start < end) {
+      int slash = path.indexOf('/', start);
+      int segmentEnd = slash < 0 || slash > end ? end : slash;
+      if (segmentEnd > start) {
+        sb.append('/');
+        if (placeholder != null) {
+          sb.append(placeholder);
+          placeholder = null;
+        } else {
+          String segment = path.substring(start, segmentEnd);
+          sb.append(segment);
+          placeholder = placeholderAfter(segment);
+        }
+      }
+      start = segmentEnd + 1;
+    }
+    if (sb.charAt(sb.length() - 1) == ' ') {
+      sb.append('/');
+    }
+    return sb.toString();
+  }
+
+  static String placeholderAfter(String segment) {
+    switch (segment) {
+      case "buckets":
+      case "couchBase":
+        return "{bucket}";
+      case "_design":
+        return "{design}";
+      case "_view":
+        return "{view}";
+      case "serverGroups":
+        return "{group}";
+      default:
+        return null;
+    }
+  }
+}
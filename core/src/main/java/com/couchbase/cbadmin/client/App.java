@@ -37,6 +37,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Command line application utilizing the cbadmin Java toolkit.
@@ -582,16 +584,48 @@ public class App {
 
   void rebalanceProgress() throws Exception {
     long pollInterval = (long) (rbInfoOptions.pollInterval * 1000);
-    while (true) {
-      if (!rbInfoSweep()) {
-        break;
+    if (pollInterval <= 0) {
+      rbInfoSweep();
+      return;
+    }
+
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<RestApiException> error = new AtomicReference<RestApiException>();
+    RebalanceMonitor monitor = new RebalanceMonitor(client);
+    monitor.setMinInterval(pollInterval);
+    monitor.setMaxInterval(Math.max(pollInterval, monitor.getMaxInterval()));
+    RebalanceMonitor.Listener listener = new RebalanceMonitor.Listener() {
+      @Override
+      public void onProgress(RebalanceMonitor.Progress progress) {
+        out.printf("PROGRESS: %f%n", progress.getProgress());
+        out.flush();
       }
 
-      if (pollInterval <= 0) {
-        break;
+      @Override
+      public void onStall(RebalanceMonitor.Progress progress, long stalledFor) {
+        out.printf("** STALLED for %d seconds%n", stalledFor / 1000);
       }
 
-      Thread.sleep(pollInterval);
+      @Override
+      public void onComplete(RebalanceInfo info) {
+        out.println(info.isStopped() ? "** STOPPED" : "** Done!");
+        done.countDown();
+      }
+
+      @Override
+      public void onError(RestApiException ex) {
+        error.set(ex);
+        done.countDown();
+      }
+    };
+    monitor.addListener(listener);
+    try {
+      done.await();
+    } finally {
+      monitor.removeListener(listener);
+    }
+    if (error.get() != null) {
+      throw error.get();
     }
   }
 
@@ -0,0 +1,66 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Bucket;
+import com.couchbase.cbadmin.assets.Node;
+import com.couchbase.cbadmin.assets.NodeGroupList;
+import com.google.gson.JsonElement;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link CouchbaseAdmin} for the query operations.
+ * <p>
+ * Every method returns immediately. The returned future is completed on an
+ * I/O dispatcher thread, or completed exceptionally with a
+ * {@link RestApiException} if the request fails or the server returns an
+ * unexpected status. Callbacks attached to the futures must not block.
+ */
+public interface AsyncCouchbaseAdmin extends Closeable {
+
+    /**
+     * Performs a GET request on a path and returns a JSON element.
+     *
+     * @param path The path to query (relative to entryPoint)
+     * @return a future of the JsonElement
+     * @see CouchbaseAdmin#getJson(String)
+     */
+    CompletableFuture<JsonElement> getJson(String path);
+
+    /**
+     * @see CouchbaseAdmin#getBuckets()
+     */
+    CompletableFuture<Map<String, Bucket>> getBuckets();
+
+    /**
+     * @see CouchbaseAdmin#getNodes()
+     */
+    CompletableFuture<List<Node>> getNodes();
+
+    /**
+     * @see CouchbaseAdmin#getGroupList()
+     */
+    CompletableFuture<NodeGroupList> getGroupList();
+
+    /**
+     * @see CouchbaseAdmin#getInfo()
+     */
+    CompletableFuture<ConnectionInfo> getInfo();
+
+    /**
+     * @see CouchbaseAdmin#getRebalanceStatus()
+     */
+    CompletableFuture<RebalanceInfo> getRebalanceStatus();
+
+    /**
+     * @see CouchbaseAdmin#createBucket(BucketConfig)
+     */
+    CompletableFuture<Void> createBucket(BucketConfig config);
+
+    /**
+     * @see CouchbaseAdmin#deleteBucket(String)
+     */
+    CompletableFuture<Void> deleteBucket(String name);
+}
@@ -0,0 +1,347 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Bucket;
+import com.couchbase.cbadmin.assets.Node;
+import com.couchbase.cbadmin.assets.NodeGroupList;
+import com.google.gson.JsonElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.couchbase.cbadmin.client.CouchbaseAdminImpl.*;
+
+/**
+ * Couchbase Administrative Client backed by a non-blocking HTTP client.
+ * <p>
+ * Requests are multiplexed over a small number of I/O dispatcher threads,
+ * so a single caller can keep many requests in flight. Timeouts, connection
+ * limits, {@link AdminMetrics} and the {@link RetryPolicy} are taken from the
+ * {@link AdminClientConfig} as by {@link CouchbaseAdminImpl}, whose status
+ * checking and response parsing are shared. Response bodies are parsed on
+ * an executor, never on the I/O dispatcher threads. There are no circuit
+ * breakers and no load balancing.
+ */
+public class AsyncCouchbaseAdminImpl implements AsyncCouchbaseAdmin {
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+    private static final ScheduledExecutorService RETRIES = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "couchbase-admin-async-retry");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final URL entryPoint;
+    private final Logger logger = LoggerFactory.getLogger(AsyncCouchbaseAdminImpl.class);
+    private final AdminClientConfig config;
+    private final Executor parseExecutor;
+    private final CloseableHttpAsyncClient cli;
+
+    /**
+     * Parses the JSON body of a successful response.
+     */
+    private interface ResponseParser<T> {
+        T parse(JsonElement json) throws RestApiException;
+    }
+
+    private static final ResponseParser<Void> IGNORE = new ResponseParser<Void>() {
+        @Override
+        public Void parse(JsonElement json) {
+            return null;
+        }
+    };
+
+    /**
+     * Constructs a new connection to the Couchbase administrative API
+     *
+     * @param url      The URL to the server. The path is ignored
+     * @param username The administrative username, usually 'Administrator'
+     * @param password The administrative password
+     */
+    public AsyncCouchbaseAdminImpl(URL url, String username, String password) {
+        this(url, username, password, new AdminClientConfig()
+                .maxConnectionsTotal(DEFAULT_MAX_CONNECTIONS)
+                .maxConnectionsPerRoute(DEFAULT_MAX_CONNECTIONS));
+    }
+
+    /**
+     * @param maxConnections The maximal number of concurrent connections to the server
+     */
+    public AsyncCouchbaseAdminImpl(URL url, String username, String password, int maxConnections) {
+        this(url, username, password, new AdminClientConfig()
+                .maxConnectionsTotal(maxConnections)
+                .maxConnectionsPerRoute(maxConnections));
+    }
+
+    /**
+     * Parses response bodies on the common fork/join pool.
+     *
+     * @param config Connection pool, timeout, metrics and retry settings
+     */
+    public AsyncCouchbaseAdminImpl(URL url, String username, String password, AdminClientConfig config) {
+        this(url, username, password, config, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param config        Connection pool, timeout, metrics and retry settings
+     * @param parseExecutor Executor parsing the response bodies
+     */
+    public AsyncCouchbaseAdminImpl(URL url, String username, String password,
+                                   AdminClientConfig config, Executor parseExecutor) {
+        entryPoint = url;
+        this.config = config;
+        this.parseExecutor = parseExecutor;
+        cli = HttpAsyncClients.custom()
+                .setDefaultHeaders(makeDefaultHeaders(username, password))
+                .setDefaultRequestConfig(makeRequestConfig(config))
+                .setKeepAliveStrategy(makeKeepAliveStrategy(config))
+                .setMaxConnTotal(config.getMaxConnectionsTotal())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .build();
+        cli.start();
+    }
+
+    private <T> CompletableFuture<T> execute(HttpRequestBase req, String path,
+                                             int expectCode, ResponseParser<T> parser) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            req.setURI(resolve(entryPoint, path));
+        } catch (IOException ex) {
+            future.completeExceptionally(new RestApiException(ex));
+            return future;
+        }
+        config.getRetryPolicy().onRequest();
+        new Exchange<T>(req, expectCode, parser, future).send();
+        return future;
+    }
+
+    /**
+     * All attempts of one request, retried according to the {@link RetryPolicy}.
+     */
+    private final class Exchange<T> implements FutureCallback<HttpResponse> {
+        private final HttpRequestBase req;
+        private final int expectCode;
+        private final ResponseParser<T> parser;
+        private final CompletableFuture<T> future;
+        private final AdminMetrics metrics = config.getMetrics();
+        private final String endpoint;
+        private int attempt = 1;
+        private long start;
+
+        Exchange(HttpRequestBase req, int expectCode, ResponseParser<T> parser, CompletableFuture<T> future) {
+            this.req = req;
+            this.expectCode = expectCode;
+            this.parser = parser;
+            this.future = future;
+            this.endpoint = metrics != AdminMetrics.NONE
+                    ? EndpointKeys.of(req.getMethod(), req.getURI().getRawPath())
+                    : null;
+        }
+
+        void send() {
+            logger.trace("{} {}", req.getMethod(), req.getURI());
+            start = System.nanoTime();
+            cli.execute(req, this);
+        }
+
+        @Override
+        public void completed(final HttpResponse res) {
+            try {
+                parseExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        parse(res);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        private void parse(HttpResponse res) {
+            int status = res.getStatusLine().getStatusCode();
+            try {
+                T result = parser.parse(extractResponse(res, req, expectCode));
+                onResponse(res, status);
+                future.complete(result);
+            } catch (RestApiException ex) {
+                onResponse(res, status);
+                retryOrFail(ex, ex.hasResponseStatus() ? status : 0);
+            } catch (IOException ex) {
+                onResponse(res, status);
+                future.completeExceptionally(new RestApiException(ex));
+            } catch (RuntimeException ex) {
+                onResponse(res, status);
+                future.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            if (endpoint != null) {
+                metrics.onFailure(endpoint, System.nanoTime() - start, bytesOut());
+            }
+            retryOrFail(new RestApiException(ex), -1);
+        }
+
+        @Override
+        public void cancelled() {
+            future.cancel(false);
+        }
+
+        /**
+         * @param status the response status, -1 if there was no response, 0 if
+         *               the response could not be read
+         */
+        private void retryOrFail(RestApiException ex, int status) {
+            RetryPolicy policy = config.getRetryPolicy();
+            if (!policy.isRetryable(req.getMethod(), status)
+                    || attempt >= policy.getMaxAttempts()
+                    || !policy.acquireRetry()) {
+                future.completeExceptionally(ex);
+                return;
+            }
+            long backoff = policy.backoff(attempt);
+            logger.debug("Retrying {} {} in {}ms after attempt {} failed with status {}",
+                    req.getMethod(), req.getURI(), backoff, attempt, status);
+            if (endpoint != null) {
+                metrics.onRetry(endpoint);
+            }
+            attempt++;
+            req.reset();
+            try {
+                RETRIES.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        send();
+                    }
+                }, backoff, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        private void onResponse(HttpResponse res, int status) {
+            if (endpoint == null) {
+                return;
+            }
+            HttpEntity entity = res.getEntity();
+            long bytesIn = entity != null && entity.getContentLength() > 0 ? entity.getContentLength() : 0;
+            metrics.onResponse(endpoint, status, System.nanoTime() - start, bytesOut(), bytesIn);
+        }
+
+        private long bytesOut() {
+            if (req instanceof HttpEntityEnclosingRequest) {
+                HttpEntity entity = ((HttpEntityEnclosingRequest) req).getEntity();
+                return entity != null && entity.getContentLength() > 0 ? entity.getContentLength() : 0;
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public CompletableFuture<JsonElement> getJson(String path) {
+        return execute(new HttpGet(), path, 200, new ResponseParser<JsonElement>() {
+            @Override
+            public JsonElement parse(JsonElement json) {
+                return json;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Bucket>> getBuckets() {
+        return execute(new HttpGet(), P_BUCKETS, 200, new ResponseParser<Map<String, Bucket>>() {
+            @Override
+            public Map<String, Bucket> parse(JsonElement json) throws RestApiException {
+                return parseBuckets(json);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Node>> getNodes() {
+        return execute(new HttpGet(), P_POOL_NODES, 200, new ResponseParser<List<Node>>() {
+            @Override
+            public List<Node> parse(JsonElement json) throws RestApiException {
+                return parseNodes(json);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<NodeGroupList> getGroupList() {
+        return execute(new HttpGet(), _P_SERVERGROUPS, 200, new ResponseParser<NodeGroupList>() {
+            @Override
+            public NodeGroupList parse(JsonElement json) throws RestApiException {
+                return parseGroupList(json);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<ConnectionInfo> getInfo() {
+        return execute(new HttpGet(), P_POOLS, 200, new ResponseParser<ConnectionInfo>() {
+            @Override
+            public ConnectionInfo parse(JsonElement json) throws RestApiException {
+                return parseInfo(json);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<RebalanceInfo> getRebalanceStatus() {
+        return execute(new HttpGet(), P_REBALANCE_PROGRESS, 200, new ResponseParser<RebalanceInfo>() {
+            @Override
+            public RebalanceInfo parse(JsonElement json) throws RestApiException {
+                return parseRebalanceInfo(json);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> createBucket(BucketConfig config) {
+        HttpPost req = new HttpPost();
+        req.setEntity(makeFormEntity(config.makeParams()));
+        // 202 Accepted
+        return execute(req, P_BUCKETS, 202, IGNORE);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBucket(String name) {
+        return execute(new HttpDelete(), P_BUCKETS + "/" + name, 200, IGNORE);
+    }
+
+    public URL getEntryPoint() {
+        return entryPoint;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cli.close();
+    }
+}
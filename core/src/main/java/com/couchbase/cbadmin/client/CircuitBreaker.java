@@ -0,0 +1,75 @@
+package com.couchbase.cbadmin.client;
+
+/**
+ * Circuit breaker of one node.
+ * <p>
+ * After {@code failureThreshold} consecutive failures, connection errors or
+ * 502/503/504 responses, the circuit opens and requests to the node fail fast for
+ * {@code openTimeout}. Then a single trial request is let through: its
+ * success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final String node;
+  private final int failureThreshold;
+  private final long openTimeout;
+
+  private State state = State.CLOSED;
+  private int failures;
+  private long openedAt;
+  private boolean trialRunning;
+
+  public CircuitBreaker(String node, int failureThreshold, long openTimeout) {
+    this.node = node;
+    this.failureThreshold = failureThreshold;
+    this.openTimeout = openTimeout;
+  }
+
+  /**
+   * Checks whether a request may be sent to the node.
+   *
+   * @throws RestApiException if the circuit is open
+   */
+  public synchronized void acquire() throws RestApiException {
+    if (state == State.OPEN) {
+      if (System.currentTimeMillis() - openedAt < openTimeout) {
+        throw new RestApiException("Circuit breaker of " + node + " is open");
+      }
+      state = State.HALF_OPEN;
+      trialRunning = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (trialRunning) {
+        throw new RestApiException("Circuit breaker of " + node + " is half open, trial request running");
+      }
+      trialRunning = true;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    state = State.CLOSED;
+    failures = 0;
+    trialRunning = false;
+  }
+
+  public synchronized void onFailure() {
+    failures++;
+    if (state == State.HALF_OPEN || failures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+      trialRunning = false;
+    }
+  }
+
+  public synchronized State getState() {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTimeout) {
+      return State.HALF_OPEN;
+    }
+    return state;
+  }
+
+  public String getNode() {
+    return node;
+  }
+}
@@ -0,0 +1,173 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Node;
+import com.google.gson.JsonElement;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a request against every node of the cluster concurrently.
+ * <p>
+ * Each node is queried through its own client sharing the connection pool
+ * of the template client, so a sweep over all nodes takes about one round
+ * trip of wall time. Results and errors are collected per node; nodes which
+ * did not answer before the deadline are reported with a
+ * {@link TimeoutException}.
+ * <p>
+ * The requests of a fan-out time out at its deadline, so a node which stops
+ * answering does not hold a thread beyond it. At most {@link #MAX_THREADS}
+ * nodes are queried at once, further nodes wait for a free thread.
+ */
+public class ClusterFanout {
+  /**
+   * Maximum number of nodes queried at once, by all fan-outs together.
+   */
+  public static final int MAX_THREADS = 64;
+
+  private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+          MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "cluster-fanout-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  static {
+    EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Request executed against one node.
+   */
+  public interface NodeCall<T> {
+    T call(CouchbaseAdminImpl nodeClient, Node node) throws RestApiException, IOException;
+  }
+
+  /**
+   * Outcome of a fan-out.
+   */
+  public static class Result<T> {
+    private final Map<Node,T> results;
+    private final Map<Node,Exception> errors;
+
+    Result(Map<Node,T> results, Map<Node,Exception> errors) {
+      this.results = Collections.unmodifiableMap(results);
+      this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return results of the nodes which answered successfully
+     */
+    public Map<Node,T> getResults() {
+      return results;
+    }
+
+    /**
+     * @return errors of the nodes which failed or timed out
+     */
+    public Map<Node,Exception> getErrors() {
+      return errors;
+    }
+
+    public boolean isComplete() {
+      return errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return "Result{results=" + results.keySet() + ", errors=" + errors + "}";
+    }
+  }
+
+  private final CouchbaseAdminImpl template;
+
+  public ClusterFanout(CouchbaseAdminImpl template) {
+    this.template = template;
+  }
+
+  /**
+   * Runs the call against all nodes returned by {@link CouchbaseAdmin#getNodes()}.
+   *
+   * @param timeout deadline of the whole fan-out, in millis
+   */
+  public <T> Result<T> run(NodeCall<T> call, long timeout) throws RestApiException {
+    return run(template.getNodes(), call, timeout);
+  }
+
+  /**
+   * Runs the call against the nodes.
+   *
+   * @param timeout deadline of the whole fan-out, in millis
+   */
+  public <T> Result<T> run(Collection<Node> nodes, final NodeCall<T> call, long timeout) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    long requestDeadline = System.currentTimeMillis() + timeout;
+    template.ensurePoolCapacity(nodes.size());
+
+    Map<Node,Future<T>> futures = new LinkedHashMap<Node, Future<T>>();
+    for (final Node node : nodes) {
+      final CouchbaseAdminImpl nodeClient = template.shareForHost(node.getRestUrl(), requestDeadline);
+      futures.put(node, EXECUTOR.submit(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          return call.call(nodeClient, node);
+        }
+      }));
+    }
+
+    Map<Node,T> results = new LinkedHashMap<Node, T>();
+    Map<Node,Exception> errors = new LinkedHashMap<Node, Exception>();
+    for (Map.Entry<Node,Future<T>> ent : futures.entrySet()) {
+      try {
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        results.put(ent.getKey(), ent.getValue().get(remaining, TimeUnit.NANOSECONDS));
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        errors.put(ent.getKey(), cause instanceof Exception ? (Exception) cause : ex);
+      } catch (TimeoutException ex) {
+        ent.getValue().cancel(true);
+        errors.put(ent.getKey(), new TimeoutException("No answer from " + ent.getKey() + " before the deadline"));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        for (Future<T> future : futures.values()) {
+          future.cancel(true);
+        }
+        errors.put(ent.getKey(), ex);
+        break;
+      }
+    }
+    return new Result<T>(results, errors);
+  }
+
+  /**
+   * Gets {@link CouchbaseAdmin#getInfo()} of every node.
+   */
+  public Result<ConnectionInfo> info(long timeout) throws RestApiException {
+    return run(new NodeCall<ConnectionInfo>() {
+      @Override
+      public ConnectionInfo call(CouchbaseAdminImpl nodeClient, Node node) throws RestApiException {
+        return nodeClient.getInfo();
+      }
+    }, timeout);
+  }
+
+  /**
+   * Gets {@code /nodes/self} of every node.
+   */
+  public Result<JsonElement> nodesSelf(long timeout) throws RestApiException {
+    return run(new NodeCall<JsonElement>() {
+      @Override
+      public JsonElement call(CouchbaseAdminImpl nodeClient, Node node) throws RestApiException, IOException {
+        return nodeClient.getJson(CouchbaseAdminImpl._P_NODES_SELF);
+      }
+    }, timeout);
+  }
+}
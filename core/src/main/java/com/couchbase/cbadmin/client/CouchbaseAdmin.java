@@ -27,12 +27,14 @@ import com.couchbase.cbadmin.assets.Node;
 import com.couchbase.cbadmin.assets.NodeGroup;
 import com.couchbase.cbadmin.assets.NodeGroupList;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for the {@link CouchbaseAdminImpl} class. This only has one implementation
@@ -301,10 +303,60 @@ public interface CouchbaseAdmin {
     /**
      * Add a view to the bucket. This is an extension API and is not strictly
      * administrative.
+     * <p>
+     * The design document is only written when a view was added or its
+     * normalized map/reduce functions differ from the server's copy. Views
+     * present only on the server are kept. The write is conditional on the
+     * revision read, a design document changed concurrently is read and
+     * merged again.
      *
      * @param config      The configuration object defining the view to be created
      * @param pollTimeout time to wait until the view becomes ready, in millis.
+     * @return the difference between the configuration and the server's design document
+     * @throws RestApiException
+     */
+    DesignDocDiff defineView(ViewConfig config, long pollTimeout) throws RestApiException;
+
+    /**
+     * Gets a design document. This is an extension API and is not strictly
+     * administrative.
+     *
+     * @param bucketName The bucket containing the design document
+     * @param design     The name of the design document, without the {@code _design/} prefix
+     * @return the design document, or null if it does not exist
+     * @throws RestApiException
+     */
+    JsonObject getDesignDocument(String bucketName, String design) throws RestApiException;
+
+    /**
+     * Stores a design document, replacing the existing one. The server
+     * rebuilds the indexes of all its views. A document carrying a
+     * {@code _rev} is only stored over that revision, otherwise the server
+     * answers 409 Conflict, see {@link RestApiException#isConflict()}.
+     *
+     * @param bucketName The bucket containing the design document
+     * @param design     The name of the design document, without the {@code _design/} prefix
+     * @param document   The complete design document
      * @throws RestApiException
      */
-    void defineView(ViewConfig config, long pollTimeout) throws RestApiException;
+    void putDesignDocument(String bucketName, String design, JsonObject document) throws RestApiException;
+
+    /**
+     * Deletes a design document together with its index, unless the index is
+     * shared with another design document having the same views.
+     *
+     * @param bucketName The bucket containing the design document
+     * @param design     The name of the design document, without the {@code _design/} prefix
+     * @throws RestApiException if the design document does not exist
+     */
+    void deleteDesignDocument(String bucketName, String design) throws RestApiException;
+
+    /**
+     * Waits asynchronously until all views of the design document respond.
+     *
+     * @param config  The design document to watch
+     * @param timeout time to wait until the views become ready, in millis.
+     * @return a future completed when all views are ready
+     */
+    CompletableFuture<Void> awaitViews(ViewConfig config, long timeout);
 }
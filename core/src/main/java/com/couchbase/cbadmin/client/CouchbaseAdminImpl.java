@@ -0,0 +1,1619 @@
+/*
+ * Copyright (C) 2013 Couchbase, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALING
+ * IN THE SOFTWARE.
+ */
+
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Bucket;
+import com.couchbase.cbadmin.assets.Node;
+import com.couchbase.cbadmin.assets.NodeGroup;
+import com.couchbase.cbadmin.assets.NodeGroupList;
+import com.couchbase.cbadmin.assets.NodeList;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.*;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.*;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.*;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.*;
+
+/**
+ * Couchbase Administrative Client
+ *
+ * @author mnunberg
+ */
+public class CouchbaseAdminImpl implements CouchbaseAdmin {
+    /**
+     * Known URIS.
+     */
+    public static final String P_BUCKETS = "/pools/default/buckets";
+    // From cluster_connect
+    public static final String P_SETTINGS_WEB = "/settings/web";
+    // Not in api.txt, but present in manual
+    public static final String P_POOL_NODES = "/pools/nodes";
+    // Standard
+    public static final String P_ADDNODE = "/controller/addNode";
+    public static final String P_POOLS_DEFAULT = "/pools/default";
+    public static final String P_POOLS = "/pools";
+    public static final String P_JOINCLUSTER = "/node/controller/doJoinCluster";
+    public static final String P_REBALANCE = "/controller/rebalance";
+    public static final String P_REBALANCE_STOP = "/controller/stopRebalance";
+    public static final String P_REBALANCE_PROGRESS = "/pools/default/rebalanceProgress";
+    public static final String P_TASKS = "/pools/default/tasks";
+    public static final String P_FAILOVER = "/controller/failOver";
+    public static final String P_READD = "/controller/reAddNode";
+    public static final String P_EJECT = "/controller/ejectNode";
+    public static final String _P_NODES_SELF = "/nodes/self";
+    public static final String _P_SERVERGROUPS = "/pools/default/serverGroups";
+    public static final String META_HEADER = "X-Couchbase-Meta";
+    static final Gson gs = new Gson();
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "couchbase-admin-idle-evictor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final URL entryPoint;
+    private final String user;
+    private final String passwd;
+    private final Logger logger = LoggerFactory.getLogger(CouchbaseAdminImpl.class);
+    private final AdminClientConfig config;
+    private final PoolingHttpClientConnectionManager connManager;
+    private final ScheduledFuture<?> idleEviction;
+    private final TopologyCache topologyCache;
+    private final NodeBalancer balancer;
+    // own thread, a refresh blocks while nodes are down
+    private final ScheduledExecutorService balancerRefresh;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+    private final boolean ownsPool;
+    // epoch millis limiting the timeouts of every request, 0 for none
+    private final long deadline;
+    private CloseableHttpClient cli;
+    private Node myNode = null;
+    private AliasLookup aliasLookup = new AliasLookup();
+    private ViewReadinessWatcher readinessWatcher;
+
+    {
+        // common idioms
+        aliasLookup.associateAlias("127.0.0.1", "localhost");
+    }
+
+
+    /**
+     * Constructs a new connection to the Couchbase administrative API
+     *
+     * @param url      The URL to the server. The path is ignored
+     * @param username The administrative username, usually 'Administrator'
+     * @param password The administrative password
+     */
+    public CouchbaseAdminImpl(URL url, String username, String password) {
+        this(url, username, password, new AdminClientConfig());
+    }
+
+    /**
+     * Constructs a new connection to the Couchbase administrative API
+     *
+     * @param url      The URL to the server. The path is ignored
+     * @param username The administrative username, usually 'Administrator'
+     * @param password The administrative password
+     * @param config   Connection pool and timeout settings
+     */
+    public CouchbaseAdminImpl(URL url, String username, String password, final AdminClientConfig config) {
+        entryPoint = url;
+        user = username;
+        passwd = password;
+        this.config = config;
+        circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+        ownsPool = true;
+        deadline = 0;
+
+        connManager = new PoolingHttpClientConnectionManager();
+        connManager.setMaxTotal(config.getMaxConnectionsTotal());
+        connManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+
+        cli = HttpClients.custom()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(makeRequestConfig(config))
+                .setKeepAliveStrategy(makeKeepAliveStrategy(config))
+                .setDefaultHeaders(makeDefaultHeaders(username, password))
+                .build();
+
+        if (config.getIdleTimeout() > 0) {
+            long period = Math.max(1000, config.getIdleTimeout() / 2);
+            idleEviction = EVICTOR.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    connManager.closeExpiredConnections();
+                    connManager.closeIdleConnections(config.getIdleTimeout(), TimeUnit.MILLISECONDS);
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            idleEviction = null;
+        }
+
+        if (config.getTopologyCacheTtl() > 0) {
+            topologyCache = new TopologyCache(config.getTopologyCacheTtl());
+        } else {
+            topologyCache = null;
+        }
+
+        boolean balanced = config.getBalancerRefresh() > 0;
+        if (balanced && !"http".equalsIgnoreCase(entryPoint.getProtocol())) {
+            // nodes only list their plain http REST address
+            logger.info("Load balancing disabled for {} entry point {}", entryPoint.getProtocol(), entryPoint);
+            balanced = false;
+        }
+        if (balanced) {
+            balancer = new NodeBalancer(entryPoint, config.getEjectAfter(),
+                    config.getEjectionTime(), config.getMaxEjectionTime());
+            balancerRefresh = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "couchbase-admin-balancer-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            balancerRefresh.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshBalancer();
+                }
+            }, 0, config.getBalancerRefresh(), TimeUnit.MILLISECONDS);
+        } else {
+            balancer = null;
+            balancerRefresh = null;
+        }
+
+        // last, the watcher thread uses the client
+        if (topologyCache != null && config.getTopologyWaitChange() > 0) {
+            topologyCache.watch(this, config.getTopologyWaitChange());
+        }
+    }
+
+    /**
+     * Client of another node sharing the connection pool, configuration and
+     * circuit breakers of the template. It neither caches the topology nor
+     * balances requests.
+     *
+     * @param deadline epoch millis limiting the timeouts of every request, 0 for none
+     */
+    private CouchbaseAdminImpl(CouchbaseAdminImpl template, URL url, long deadline) {
+        entryPoint = url;
+        user = template.user;
+        passwd = template.passwd;
+        config = template.config;
+        connManager = template.connManager;
+        cli = template.cli;
+        circuitBreakers = template.circuitBreakers;
+        ownsPool = false;
+        this.deadline = deadline;
+        idleEviction = null;
+        topologyCache = null;
+        balancer = null;
+        balancerRefresh = null;
+    }
+
+    private void refreshBalancer() {
+        try {
+            balancer.update(getNodes());
+        } catch (RestApiException ex) {
+            logger.debug("Can't refresh nodes of the balancer", ex);
+        } catch (RuntimeException ex) {
+            logger.warn("Can't refresh nodes of the balancer", ex);
+        }
+    }
+
+    /**
+     * Timeouts of the configuration. Shared with {@link AsyncCouchbaseAdminImpl}.
+     */
+    static RequestConfig makeRequestConfig(AdminClientConfig config) {
+        return RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .build();
+    }
+
+    /**
+     * Keeps connections alive as long as the server allows, or for the configured
+     * time if it doesn't say. Shared with {@link AsyncCouchbaseAdminImpl}.
+     */
+    static ConnectionKeepAliveStrategy makeKeepAliveStrategy(final AdminClientConfig config) {
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : config.getKeepAlive();
+            }
+        };
+    }
+
+    static List<Header> makeDefaultHeaders(String username, String password) {
+        BasicHeader hdr = new BasicHeader(
+                HttpHeaders.AUTHORIZATION,
+                "Basic " + Base64.encodeBase64String(
+                        (username + ":" + password).getBytes()));
+
+        List<Header> hdrList = new ArrayList<Header>();
+        hdrList.add(hdr);
+        return hdrList;
+    }
+
+    static UrlEncodedFormEntity makeFormEntity(Map<String, String> params) {
+
+        List<NameValuePair> nvps = new ArrayList<NameValuePair>();
+        for (Entry<String, String> ent : params.entrySet()) {
+            nvps.add(new BasicNameValuePair(ent.getKey(), ent.getValue()));
+        }
+        try {
+            return new UrlEncodedFormEntity(nvps);
+
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+
+    }
+
+    private static Inet4Address getIp4Lookup(String host) throws RestApiException {
+        Inet4Address inaddr = null;
+        InetAddress[] addrList;
+        try {
+            addrList = InetAddress.getAllByName(host);
+        } catch (UnknownHostException ex) {
+            throw new RestApiException(ex);
+        }
+
+        for (InetAddress addr : addrList) {
+            if (addr instanceof Inet4Address) {
+                inaddr = (Inet4Address) addr;
+                break;
+            }
+        }
+
+        if (inaddr == null) {
+            throw new RestApiException("Couldn't get IPv4 address");
+        }
+        return inaddr;
+    }
+
+    /**
+     * Reads the response body and checks the status code. Shared with {@link AsyncCouchbaseAdminImpl}.
+     */
+    static JsonElement extractResponse(
+            HttpResponse res,
+            HttpRequestBase req,
+            int expectCode)
+            throws RestApiException, IOException {
+
+        JsonElement ret;
+        HttpEntity entity;
+        entity = res.getEntity();
+        if (entity == null) {
+            ret = new JsonObject();
+
+        } else {
+            Header contentType = entity.getContentType();
+            if (contentType == null || contentType.getValue().contains("json") == false) {
+                ret = new JsonObject();
+                ret.getAsJsonObject().addProperty("__raw_response",
+                        IOUtils.toString(entity.getContent()));
+            } else {
+                JsonReader reader = new JsonReader(
+                        new InputStreamReader(entity.getContent()));
+                ret = new JsonParser().parse(reader);
+            }
+        }
+        if (res.getStatusLine().getStatusCode() != expectCode) {
+            throw new RestApiException(ret, res.getStatusLine(), req);
+        }
+
+        return ret;
+    }
+
+    private JsonElement getResponseJson(final HttpRequestBase req, final int expectCode)
+            throws RestApiException, IOException {
+        return readResponse(req, res -> extractResponse(res, req, expectCode));
+    }
+
+    /**
+     * Reads one response.
+     */
+    private interface ResponseReader<T> {
+        T read(HttpResponse res) throws RestApiException, IOException;
+    }
+
+    private <T> T readResponse(HttpRequestBase req, ResponseReader<T> reader)
+            throws RestApiException, IOException {
+        logger.trace("{} {}", req.getMethod(), req.getURI());
+
+        Measurement measurement = new Measurement(req);
+        CloseableHttpResponse res = measurement.execute();
+        try {
+            return reader.read(res);
+        } finally {
+            if (res.getEntity() != null) {
+                // Ensure the content is completely removed from the stream,
+                // so we can re-use the connection
+                EntityUtils.consumeQuietly(res.getEntity());
+            }
+            measurement.complete(res);
+        }
+    }
+
+    /**
+     * Reports one request to the configured {@link AdminMetrics}.
+     */
+    private final class Measurement {
+        private final HttpRequestBase req;
+        private final AdminMetrics metrics = config.getMetrics();
+        private final String endpoint;
+        private long start;
+        private CountingInputStream counter;
+
+        Measurement(HttpRequestBase req) {
+            this.req = req;
+            this.endpoint = metrics != AdminMetrics.NONE
+                    ? EndpointKeys.of(req.getMethod(), req.getURI().getRawPath())
+                    : null;
+        }
+
+        CloseableHttpResponse execute() throws IOException {
+            start = System.nanoTime();
+            CloseableHttpResponse res;
+            try {
+                res = cli.execute(req);
+            } catch (IOException ex) {
+                if (endpoint != null) {
+                    metrics.onFailure(endpoint, System.nanoTime() - start, bytesOut());
+                }
+                throw ex;
+            }
+            final HttpEntity entity = res.getEntity();
+            if (endpoint != null && entity != null) {
+                res.setEntity(new HttpEntityWrapper(entity) {
+                    @Override
+                    public InputStream getContent() throws IOException {
+                        if (counter == null) {
+                            counter = new CountingInputStream(entity.getContent());
+                        }
+                        return counter;
+                    }
+                });
+            }
+            return res;
+        }
+
+        void complete(HttpResponse res) {
+            if (endpoint == null) {
+                return;
+            }
+            HttpEntity entity = res.getEntity();
+            long bytesIn = 0;
+            if (entity != null) {
+                bytesIn = entity.getContentLength() >= 0 ? entity.getContentLength()
+                        : counter != null ? counter.getByteCount() : 0;
+            }
+            metrics.onResponse(endpoint, res.getStatusLine().getStatusCode(),
+                    System.nanoTime() - start, bytesOut(), bytesIn);
+        }
+
+        private long bytesOut() {
+            if (req instanceof HttpEntityEnclosingRequest) {
+                HttpEntity entity = ((HttpEntityEnclosingRequest) req).getEntity();
+                return entity != null && entity.getContentLength() > 0 ? entity.getContentLength() : 0;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a response body directly from the stream.
+     */
+    interface StreamParser<T> {
+        T parse(JsonReader reader) throws IOException, RestApiException;
+    }
+
+    private <T> T getResponseStream(
+            final HttpRequestBase req, String path, final int expectCode, final StreamParser<T> parser)
+            throws RestApiException, IOException {
+        return withRetry(req, path, () -> readResponseStream(req, expectCode, parser));
+    }
+
+    private <T> T readResponseStream(HttpRequestBase req, int expectCode, StreamParser<T> parser)
+            throws RestApiException, IOException {
+        logger.trace("{} {}", req.getMethod(), req.getURI());
+
+        Measurement measurement = new Measurement(req);
+        CloseableHttpResponse res = measurement.execute();
+        try {
+            HttpEntity entity = res.getEntity();
+            Header contentType = entity == null ? null : entity.getContentType();
+            if (res.getStatusLine().getStatusCode() != expectCode
+                    || contentType == null || !contentType.getValue().contains("json")) {
+                JsonElement ret = extractResponse(res, req, expectCode);
+                throw new RestApiException("Expected JSON response", ret);
+            }
+            JsonReader reader = new JsonReader(
+                    new InputStreamReader(entity.getContent(), Consts.UTF_8));
+            return parser.parse(reader);
+        } catch (IllegalStateException ex) {
+            // thrown by JsonReader on unexpected tokens
+            throw new RestApiException(ex);
+        } finally {
+            if (res.getEntity() != null) {
+                EntityUtils.consumeQuietly(res.getEntity());
+            }
+            measurement.complete(res);
+        }
+    }
+
+    private JsonElement getResponseJson(
+            final HttpRequestBase req, String path, final int expectCode)
+            throws RestApiException, IOException {
+
+        return withRetry(req, path, () -> getResponseJson(req, expectCode));
+    }
+
+    /**
+     * One attempt of a request.
+     */
+    private interface Exchange<T> {
+        T execute() throws RestApiException, IOException;
+    }
+
+    /**
+     * Executes the request through the circuit breaker of its node, retrying
+     * idempotent requests according to the {@link RetryPolicy}. With load
+     * balancing, each attempt goes to a node not tried before if possible.
+     */
+    private <T> T withRetry(HttpRequestBase req, String path, Exchange<T> exchange)
+            throws RestApiException, IOException {
+        RetryPolicy policy = config.getRetryPolicy();
+        boolean balanced = balancer != null && !isNodeLocal(req, path);
+        Set<URL> tried = balanced ? new HashSet<URL>() : Collections.<URL>emptySet();
+        policy.onRequest();
+
+        for (int attempt = 1; ; attempt++) {
+            NodeBalancer.Target target = balanced ? selectTarget(tried) : null;
+            req.setURI(resolve(target != null ? target.getUrl() : entryPoint, path));
+            if (deadline > 0) {
+                limitToDeadline(req);
+            }
+            CircuitBreaker breaker = getCircuitBreaker(req.getURI());
+            if (breaker != null) {
+                breaker.acquire();
+            }
+            if (target != null) {
+                tried.add(target.getUrl());
+                balancer.onStart(target);
+            }
+            long start = System.nanoTime();
+            int status;
+            try {
+                T result = exchange.execute();
+                if (breaker != null) {
+                    breaker.onSuccess();
+                }
+                if (target != null) {
+                    balancer.onSuccess(target, System.nanoTime() - start);
+                }
+                return result;
+            } catch (RestApiException ex) {
+                status = statusOf(ex);
+                recordOutcome(breaker, target, status, start);
+                if (!shouldRetry(policy, breaker, req, status, attempt)) {
+                    throw ex;
+                }
+            } catch (IOException ex) {
+                status = -1;
+                recordOutcome(breaker, target, status, start);
+                if (!shouldRetry(policy, breaker, req, status, attempt)) {
+                    throw ex;
+                }
+            } catch (RuntimeException ex) {
+                // e.g. an unparsable response, the node answered; releases a trial request and the node's slot
+                recordOutcome(breaker, target, 0, start);
+                throw ex;
+            }
+
+            long backoff = policy.backoff(attempt);
+            logger.debug("Retrying {} {} in {}ms after attempt {} failed with status {}",
+                    req.getMethod(), req.getURI(), backoff, attempt, status);
+            AdminMetrics metrics = config.getMetrics();
+            if (metrics != AdminMetrics.NONE) {
+                metrics.onRetry(EndpointKeys.of(req.getMethod(), req.getURI().getRawPath()));
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry " + req.getURI());
+            }
+            req.reset();
+        }
+    }
+
+    /**
+     * Limits the timeouts of the request to the time left until the deadline,
+     * so a node which stops answering can't hold the calling thread beyond it.
+     */
+    private void limitToDeadline(HttpRequestBase req) throws SocketTimeoutException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline passed before " + req.getMethod() + " " + req.getURI());
+        }
+        int left = (int) Math.min(remaining, Integer.MAX_VALUE);
+        RequestConfig defaults = makeRequestConfig(config);
+        req.setConfig(RequestConfig.copy(defaults)
+                .setConnectTimeout(limit(defaults.getConnectTimeout(), left))
+                .setSocketTimeout(limit(defaults.getSocketTimeout(), left))
+                .setConnectionRequestTimeout(limit(defaults.getConnectionRequestTimeout(), left))
+                .build());
+    }
+
+    private static int limit(int timeout, int left) {
+        return timeout > 0 ? Math.min(timeout, left) : left;
+    }
+
+    private static boolean shouldRetry(RetryPolicy policy, CircuitBreaker breaker,
+                                       HttpRequestBase req, int status, int attempt) {
+        return policy.isRetryable(req.getMethod(), status)
+                && (breaker == null || breaker.getState() == CircuitBreaker.State.CLOSED)
+                && attempt < policy.getMaxAttempts()
+                && policy.acquireRetry();
+    }
+
+    /**
+     * Connection errors and 502/503/504 count as failures of the node. Other
+     * errors are answers of a working node, e.g. 500 of a view whose index
+     * is still being built.
+     *
+     * @param status the response status, -1 if there was no response, 0 if
+     *               the response could not be read
+     */
+    private void recordOutcome(CircuitBreaker breaker, NodeBalancer.Target target, int status, long start) {
+        boolean failed = status < 0 || status == 502 || status == 503 || status == 504;
+        if (breaker != null) {
+            if (failed) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+        if (target != null) {
+            if (failed) {
+                balancer.onFailure(target);
+            } else if (status > 0) {
+                // the node answered, even though the request was rejected
+                balancer.onSuccess(target, System.nanoTime() - start);
+            } else {
+                balancer.onDone(target);
+            }
+        }
+    }
+
+    /**
+     * Picks the node for a balanced request, skipping nodes already tried
+     * and nodes whose circuit is open.
+     *
+     * @return the node, or null to use the entry point
+     */
+    private NodeBalancer.Target selectTarget(Set<URL> tried) {
+        Set<URL> exclude = new HashSet<URL>(tried);
+        while (true) {
+            NodeBalancer.Target target = balancer.select(exclude);
+            if (target == null) {
+                return tried.isEmpty() ? null : balancer.select(Collections.<URL>emptySet());
+            }
+            CircuitBreaker breaker = config.getCircuitFailureThreshold() > 0
+                    ? circuitBreakers.get(target.getUrl().getHost() + ":" + target.getUrl().getPort())
+                    : null;
+            if (breaker == null || breaker.getState() != CircuitBreaker.State.OPEN) {
+                return target;
+            }
+            exclude.add(target.getUrl());
+        }
+    }
+
+    /**
+     * Requests concerning the entry point node itself are never balanced.
+     */
+    private static boolean isNodeLocal(HttpRequestBase req, String path) {
+        return path.contains("://")
+                || path.equals(P_POOLS)
+                || path.startsWith(P_SETTINGS_WEB)
+                || path.startsWith(_P_NODES_SELF)
+                || path.startsWith("/node/")
+                || (path.equals(P_POOLS_DEFAULT) && !"GET".equals(req.getMethod()));
+    }
+
+    /**
+     * @return the load balancer, or null if load balancing is disabled
+     */
+    public NodeBalancer getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * @return the response status, -1 if no response was received, 0 if the
+     * request failed otherwise
+     */
+    private static int statusOf(RestApiException ex) {
+        if (ex.hasResponseStatus()) {
+            return ex.getStatusLine().getStatusCode();
+        }
+        return ex.getCause() instanceof IOException ? -1 : 0;
+    }
+
+    private CircuitBreaker getCircuitBreaker(URI uri) {
+        if (config.getCircuitFailureThreshold() <= 0) {
+            return null;
+        }
+        String node = uri.getHost() + ":" + uri.getPort();
+        CircuitBreaker breaker = circuitBreakers.get(node);
+        if (breaker == null) {
+            breaker = circuitBreakers.computeIfAbsent(node, k -> new CircuitBreaker(
+                    k, config.getCircuitFailureThreshold(), config.getCircuitOpenTimeout()));
+        }
+        return breaker;
+    }
+
+    /**
+     * @return circuit breakers of the nodes contacted so far, keyed by {@code host:port}
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(circuitBreakers);
+    }
+
+    static URI resolve(URL base, String path) throws IOException {
+        try {
+            return new URL(base, path).toURI();
+        } catch (MalformedURLException ex) {
+            throw new IOException(ex);
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Performs a request changing the cluster topology and drops cached listings.
+     */
+    private JsonElement mutate(HttpRequestBase req, String path, int expectCode)
+            throws RestApiException, IOException {
+        try {
+            return getResponseJson(req, path, expectCode);
+        } finally {
+            invalidateTopology();
+        }
+    }
+
+    /**
+     * Drops cached node, bucket and group listings, if caching is enabled.
+     */
+    public void invalidateTopology() {
+        if (topologyCache != null) {
+            topologyCache.invalidate();
+        }
+    }
+
+    public TopologyCache getTopologyCache() {
+        return topologyCache;
+    }
+
+    @Override
+    public JsonElement getJson(String path) throws IOException, RestApiException {
+        return getResponseJson(new HttpGet(), path, 200);
+    }
+
+    @Override
+    public Map<String, Bucket> getBuckets() throws RestApiException {
+        if (topologyCache != null) {
+            return new HashMap<String, Bucket>(topologyCache.getBuckets(this::fetchBuckets));
+        }
+        return fetchBuckets();
+    }
+
+    private Map<String, Bucket> fetchBuckets() throws RestApiException {
+        try {
+            if (config.isStreamingParse()) {
+                return getResponseStream(new HttpGet(), P_BUCKETS, 200,
+                        reader -> readBuckets(reader, config.isRetainRawJson()));
+            }
+            return parseBuckets(getJson(P_BUCKETS));
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    static Map<String, Bucket> readBuckets(JsonReader reader, boolean retainRawJson)
+            throws IOException, RestApiException {
+        Map<String, Bucket> ret = new HashMap<String, Bucket>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Bucket bucket = Bucket.read(reader, retainRawJson);
+            ret.put(bucket.getName(), bucket);
+        }
+        reader.endArray();
+        return ret;
+    }
+
+    static Map<String, Bucket> parseBuckets(JsonElement e) throws RestApiException {
+        Map<String, Bucket> ret = new HashMap<String, Bucket>();
+        JsonArray arr;
+        if (!e.isJsonArray()) {
+            throw new RestApiException("Expected JsonObject", e);
+        }
+
+        arr = e.getAsJsonArray();
+        for (int i = 0; i < arr.size(); i++) {
+            JsonElement tmpElem = arr.get(i);
+            if (!tmpElem.isJsonObject()) {
+                throw new RestApiException("Expected JsonObject", tmpElem);
+            }
+
+            Bucket bucket = new Bucket(tmpElem.getAsJsonObject());
+            ret.put(bucket.getName(), bucket);
+        }
+        return ret;
+    }
+
+    @Override
+    public NodeGroupList getGroupList() throws RestApiException {
+        if (topologyCache != null) {
+            return topologyCache.getGroupList(this::fetchGroupList);
+        }
+        return fetchGroupList();
+    }
+
+    private NodeGroupList fetchGroupList() throws RestApiException {
+        try {
+            if (config.isStreamingParse()) {
+                return getResponseStream(new HttpGet(), _P_SERVERGROUPS, 200,
+                        reader -> NodeGroupList.read(reader, config.isRetainRawJson()));
+            }
+            return parseGroupList(getJson(_P_SERVERGROUPS));
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    static NodeGroupList parseGroupList(JsonElement e) throws RestApiException {
+        if (!e.isJsonObject()) {
+            throw new RestApiException("Expected JSON object", e);
+        }
+        return new NodeGroupList(e.getAsJsonObject());
+    }
+
+    /**
+     * Returns the nodes known to the cluster as an indexed, immutable list.
+     *
+     * @return A list of Node objects.
+     */
+    @Override
+    public NodeList getNodes() throws RestApiException {
+        if (topologyCache != null) {
+            return topologyCache.getNodes(this::fetchNodes);
+        }
+        return fetchNodes();
+    }
+
+    private NodeList fetchNodes() throws RestApiException {
+        try {
+            if (config.isStreamingParse()) {
+                return getResponseStream(new HttpGet(), P_POOL_NODES, 200,
+                        reader -> readNodes(reader, config.isRetainRawJson()));
+            }
+            return parseNodes(getJson(P_POOL_NODES));
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    static NodeList readNodes(JsonReader reader, boolean retainRawJson)
+            throws IOException, RestApiException {
+        List<Node> ret = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("nodes")) {
+                reader.skipValue();
+                continue;
+            }
+            ret = new ArrayList<Node>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ret.add(Node.read(reader, retainRawJson));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+
+        if (ret == null) {
+            throw new RestApiException("Expected 'nodes' array");
+        }
+        return new NodeList(ret);
+    }
+
+    static NodeList parseNodes(JsonElement e) throws RestApiException {
+        List<Node> ret = new ArrayList<Node>();
+        if (!e.isJsonObject()) {
+            throw new RestApiException("Expected JsonObject", e);
+        }
+
+        JsonObject obj = e.getAsJsonObject();
+        JsonArray nodesArr;
+        e = obj.get("nodes");
+
+        if (e == null) {
+            throw new RestApiException("Expected 'nodes' array", obj);
+        }
+
+        nodesArr = e.getAsJsonArray();
+        for (int i = 0; i < nodesArr.size(); i++) {
+            e = nodesArr.get(i);
+            JsonObject nObj;
+            if (!e.isJsonObject()) {
+                throw new RestApiException("Malformed node entry", e);
+            }
+            nObj = e.getAsJsonObject();
+            Node n = new Node(nObj);
+            ret.add(n);
+        }
+
+        return new NodeList(ret);
+    }
+
+    @Override
+    public void addNewNode(URL newNode) throws RestApiException {
+        addNewNode(newNode, user, passwd);
+    }
+
+    @Override
+    public void addNewNode(CouchbaseAdminImpl newNode) throws RestApiException {
+        addNewNode(newNode.getEntryPoint());
+    }
+
+    @Override
+    public void addNewNode(URL newNode, String nnUser, String nnPass)
+            throws RestApiException {
+
+        int ePort = newNode.getPort();
+        if (ePort == -1) {
+            ePort = entryPoint.getPort();
+        }
+
+        InetAddress inaddr = getIp4Lookup(newNode.getHost());
+
+        if (newNode.getHost().equals(entryPoint.getHost())
+                && ePort == entryPoint.getPort()) {
+            throw new IllegalArgumentException("Can't join node to self");
+        }
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("user", nnUser);
+        params.put("password", nnPass);
+        params.put("hostname", inaddr.getHostAddress() + ":" + ePort);
+
+        HttpPost post = new HttpPost();
+        post.setEntity(makeFormEntity(params));
+
+        try {
+            mutate(post, P_ADDNODE, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public Node findNode(URL node) throws RestApiException {
+        Collection<String> aliases = aliasLookup.getForAlias(node.getHost());
+        NodeList nodes = getNodes();
+
+        if (node.getPort() != -1) {
+            for (String alias : aliases) {
+                Node n = nodes.findByHostPort(alias, node.getPort());
+                if (n != null) {
+                    return n;
+                }
+            }
+        } else {
+            Node ret = null;
+            for (String alias : aliases) {
+                for (Node n : nodes.findByHost(alias)) {
+                    if (ret != null && !ret.equals(n)) {
+                        throw new IllegalArgumentException(
+                                "Found more than one node with the same hostname. Need port");
+                    }
+                    ret = n;
+                }
+            }
+            if (ret != null) {
+                return ret;
+            }
+        }
+
+        throw new RestApiException("Couldn't find node " + node);
+    }
+
+    @Override
+    public void initNewCluster(ClusterConfig config) throws RestApiException {
+        // We need two requests, one to set the memory quota, the other
+        // to set the authentication params.
+        HttpPost memInit = new HttpPost();
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("memoryQuota", "" + config.memoryQuota);
+        memInit.setEntity(makeFormEntity(params));
+        try {
+            mutate(memInit, P_POOLS_DEFAULT, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+
+        params.clear();
+        HttpPost authInit = new HttpPost();
+        params.put("port", "SAME");
+        params.put("username", this.user);
+        params.put("password", this.passwd);
+        authInit.setEntity(makeFormEntity(params));
+        try {
+            getResponseJson(authInit, P_SETTINGS_WEB, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void joinCluster(URL clusterUrl) throws RestApiException {
+        HttpPost req = new HttpPost();
+        int ePort = clusterUrl.getPort();
+        if (ePort == -1) {
+            ePort = entryPoint.getPort();
+        }
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("clusterMemberHostIp", clusterUrl.getHost());
+        params.put("clusterMemberPort", "" + ePort);
+        params.put("user", user);
+        params.put("password", passwd);
+
+        req.setEntity(makeFormEntity(params));
+        try {
+            mutate(req, P_JOINCLUSTER, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void rebalance(List<Node> remaining,
+                          List<Node> failed_over,
+                          List<Node> to_remove)
+            throws RestApiException {
+
+        List<String> ejectedIds = new ArrayList<String>();
+        List<String> remainingIds = new ArrayList<String>();
+        Map<String, String> params = new HashMap<String, String>();
+
+        if (failed_over != null) {
+            for (Node ejectedNode : failed_over) {
+                ejectedIds.add(ejectedNode.getNSOtpNode());
+            }
+        }
+
+        if (remaining == null) {
+            remaining = getNodes();
+        }
+
+        for (Node remainingNode : remaining) {
+            if (failed_over != null && failed_over.contains(remainingNode)) {
+                continue;
+            }
+            remainingIds.add(remainingNode.getNSOtpNode());
+        }
+
+        if (to_remove != null) {
+            for (Node nn : to_remove) {
+                ejectedIds.add(nn.getNSOtpNode());
+            }
+        }
+
+        params.put("knownNodes", StringUtils.join(remainingIds, ","));
+        params.put("ejectedNodes", StringUtils.join(ejectedIds, ","));
+
+        HttpPost req = new HttpPost();
+        req.setEntity(makeFormEntity(params));
+        try {
+            mutate(req, P_REBALANCE, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void rebalance() throws RestApiException {
+        rebalance(null, null, null);
+    }
+
+    @Override
+    public void createBucket(BucketConfig config) throws RestApiException {
+        HttpPost req = new HttpPost();
+        req.setEntity(makeFormEntity(config.makeParams()));
+        try {
+
+            // 202 Accepted
+            mutate(req, P_BUCKETS, 202);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void deleteBucket(String name) throws RestApiException {
+        HttpDelete req = new HttpDelete();
+        try {
+            mutate(req, P_BUCKETS + "/" + name, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void stopRebalance() throws RestApiException {
+        HttpPost post = new HttpPost();
+        try {
+            mutate(post, P_REBALANCE_STOP, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public RebalanceInfo getRebalanceStatus() throws RestApiException {
+        JsonElement js;
+
+        try {
+            js = getResponseJson(new HttpGet(), P_REBALANCE_PROGRESS, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+
+        return parseRebalanceInfo(js);
+    }
+
+    static RebalanceInfo parseRebalanceInfo(JsonElement js) throws RestApiException {
+        if (!js.isJsonObject()) {
+            throw new RestApiException("Expected JSON object", js);
+        }
+        return new RebalanceInfo(js.getAsJsonObject());
+    }
+
+
+    private void otpPostCommon(Node node, String uri) throws RestApiException {
+        HttpPost post = new HttpPost();
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("otpNode", node.getNSOtpNode());
+        post.setEntity(makeFormEntity(params));
+        try {
+            mutate(post, uri, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void failoverNode(Node node) throws RestApiException {
+        otpPostCommon(node, P_FAILOVER);
+    }
+
+    @Override
+    public void readdNode(Node node) throws RestApiException {
+        otpPostCommon(node, P_READD);
+    }
+
+    @Override
+    public void ejectNode(Node node) throws RestApiException {
+        otpPostCommon(node, P_EJECT);
+    }
+
+    @Override
+    public ConnectionInfo getInfo() throws RestApiException {
+        try {
+            return parseInfo(getResponseJson(new HttpGet(), P_POOLS, 200));
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    static ConnectionInfo parseInfo(JsonElement js) throws RestApiException {
+        if (!js.isJsonObject()) {
+            throw new RestApiException("Expected JSON Object", js);
+        }
+        return new ConnectionInfo(js.getAsJsonObject());
+    }
+
+    @Override
+    public Node getAsNode(boolean forceRefresh) throws RestApiException {
+        if (myNode != null && forceRefresh == false) {
+            return myNode;
+        }
+
+        myNode = findNode(entryPoint);
+        return myNode;
+    }
+
+    @Override
+    public Node getAsNode() throws RestApiException {
+        return getAsNode(false);
+    }
+
+
+    public NodeGroup findGroup(String name) throws RestApiException {
+        NodeGroup group = getGroupList().find(name);
+        if (group == null) {
+            throw new RestApiException("No such group");
+        }
+        return group;
+    }
+
+    @Override
+    public void renameGroup(NodeGroup from, String to) throws RestApiException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("name", to);
+        // Create a PUT request.
+        HttpPut putReq = new HttpPut();
+        putReq.setEntity(makeFormEntity(params));
+        try {
+            mutate(putReq, from.getUri().toString(), 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    public void renameGroup(String from, String to) throws RestApiException {
+        renameGroup(findGroup(from), to);
+    }
+
+    @Override
+    public void addGroup(String name) throws RestApiException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("name", name);
+        HttpPost postReq = new HttpPost();
+        postReq.setEntity(makeFormEntity(params));
+        try {
+            mutate(postReq, _P_SERVERGROUPS, 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void deleteGroup(NodeGroup group) throws RestApiException {
+        HttpDelete del = new HttpDelete();
+        try {
+            mutate(del, group.getUri().toString(), 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    public void deleteGroup(String name) throws RestApiException {
+        deleteGroup(findGroup(name));
+    }
+
+    @Override
+    public void allocateGroups(Map<NodeGroup, Collection<Node>> config,
+                               NodeGroupList existingGroups) throws RestApiException {
+
+        Set<NodeGroup> groups;
+        if (existingGroups == null) {
+            existingGroups = getGroupList();
+        }
+
+        groups = new HashSet<NodeGroup>(existingGroups.getGroups());
+        if (config.keySet().size() > groups.size()) {
+            throw new IllegalArgumentException("Too many groups specified");
+        }
+
+        JsonObject payload = new JsonObject();
+        JsonArray groupsArray = new JsonArray();
+        payload.add("groups", groupsArray);
+
+        Set<Node> changedNodes = new HashSet<Node>();
+        for (Collection<Node> ll : config.values()) {
+            // Sanity
+            for (Node nn : ll) {
+                if (changedNodes.contains(nn)) {
+                    throw new IllegalArgumentException("Node " + nn + " specified twice");
+                }
+                changedNodes.add(nn);
+            }
+        }
+
+        // Now go through our existing groups and see which ones are to be modified
+        for (NodeGroup group : groups) {
+            JsonObject curJson = new JsonObject();
+            JsonArray nodesArray = new JsonArray();
+            groupsArray.add(curJson);
+
+            curJson.addProperty("uri", group.getUri().toString());
+            curJson.add("nodes", nodesArray);
+            Set<Node> nodes = new HashSet<Node>(group.getNodes());
+            if (config.containsKey(group)) {
+                nodes.addAll(config.get(group));
+            }
+
+            for (Node node : nodes) {
+                boolean nodeRemains;
+
+                /**
+                 * If the node was specified in the config, it either belongs to us
+                 * or it belongs to a different group. If it does not belong to us then
+                 * we skip it, otherwise it's placed back inside the group list.
+                 */
+                if (!changedNodes.contains(node)) {
+                    nodeRemains = true;
+                } else if (config.containsKey(group) && config.get(group).contains(node)) {
+                    nodeRemains = true;
+                } else {
+                    nodeRemains = false;
+                }
+
+                if (!nodeRemains) {
+                    continue;
+                }
+
+                // Is it staying with us, or is it moving?
+                JsonObject curNodeJson = new JsonObject();
+                curNodeJson.addProperty("otpNode", node.getNSOtpNode());
+                nodesArray.add(curNodeJson);
+            }
+        }
+
+        HttpPut putReq = new HttpPut();
+        try {
+            putReq.setEntity(new StringEntity(new Gson().toJson(payload)));
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+
+        try {
+            mutate(putReq, existingGroups.getAssignmentUri().toString(), 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    public void assignNodeToGroup(NodeGroup target, Node src) throws RestApiException {
+        Map<NodeGroup, Collection<Node>> mm = new HashMap<NodeGroup, Collection<Node>>();
+        mm.put(target, Collections.singleton(src));
+        allocateGroups(mm, null);
+    }
+
+    /**
+     * Get the existing Node object, without refreshing
+     *
+     * @return null if no node, the Node otherwise
+     */
+    public Node getCachedNode() {
+        return myNode;
+    }
+
+    public String getUsername() {
+        return user;
+    }
+
+    public String getPassword() {
+        return passwd;
+    }
+
+    public URL getEntryPoint() {
+        return entryPoint;
+    }
+
+    public AliasLookup getAliasLookupCache() {
+        return aliasLookup;
+    }
+
+    /**
+     * Copy this administrative client with its credentials for a new host.
+     * The copy shares this client's connection pool and runs no background
+     * tasks, it needs not be closed.
+     *
+     * @param newHost The new host for the new object
+     * @return The new client
+     * @see #shareForHost(URL)
+     */
+    public CouchbaseAdminImpl copyForHost(URL newHost) {
+        return shareForHost(newHost);
+    }
+
+    /**
+     * Creates a client of another node which shares this client's connection
+     * pool. Closing it does not close the pool.
+     *
+     * @param host The REST URL of the node
+     * @see ClusterFanout
+     */
+    public CouchbaseAdminImpl shareForHost(URL host) {
+        return new CouchbaseAdminImpl(this, host, 0);
+    }
+
+    /**
+     * Creates a client of another node like {@link #shareForHost(URL)} whose
+     * requests time out at the deadline at the latest.
+     *
+     * @param deadline epoch millis
+     */
+    CouchbaseAdminImpl shareForHost(URL host, long deadline) {
+        return new CouchbaseAdminImpl(this, host, deadline);
+    }
+
+    /**
+     * Makes sure the connection pool allows at least the given number of
+     * connections in total, e.g. one per node of a fan-out.
+     */
+    void ensurePoolCapacity(int connections) {
+        synchronized (connManager) {
+            if (connManager.getMaxTotal() < connections) {
+                connManager.setMaxTotal(connections);
+            }
+        }
+    }
+
+    public AdminClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Get statistics of the connection pool
+     *
+     * @return leased, pending, available and maximal connection counts
+     */
+    public PoolStats getPoolStats() {
+        return connManager.getTotalStats();
+    }
+
+    /**
+     * Closes all pooled connections and stops the watcher of view readiness.
+     * The client can't be used afterwards. Clients created by
+     * {@link #shareForHost(URL)} leave the shared pool open.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (readinessWatcher != null) {
+                readinessWatcher.close();
+                readinessWatcher = null;
+            }
+        }
+        if (!ownsPool) {
+            return;
+        }
+        if (topologyCache != null) {
+            topologyCache.stop();
+        }
+        if (idleEviction != null) {
+            idleEviction.cancel(false);
+        }
+        if (balancerRefresh != null) {
+            balancerRefresh.shutdownNow();
+        }
+        cli.close();
+    }
+
+    /**
+     * Add a view to the bucket. This is an extension API and is not strictly
+     * administrative.
+     * <p>
+     * The design document is only written when the views differ from the server's copy.
+     *
+     * @param config      The configuration object defining the view to be created
+     * @param pollTimeout time to wait until the view becomes ready, in millis.
+     * @return the difference between the configuration and the server's design document
+     * @throws RestApiException
+     */
+    @Override
+    public DesignDocDiff defineView(ViewConfig config, long pollTimeout) throws RestApiException {
+        DesignDocDiff diff = writeDesignDocument(config);
+
+        if (pollTimeout > 0) {
+            try {
+                awaitViews(config, pollTimeout).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RestApiException(ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RestApiException) {
+                    throw (RestApiException) ex.getCause();
+                }
+                throw new RestApiException(ex.getCause());
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Merges the views into the server's design document. The merged copy carries the revision it was
+     * merged against; when another client wrote the document meanwhile, it is read and merged again.
+     *
+     * @return the difference against the revision read first, also when the views were merged again
+     */
+    private DesignDocDiff writeDesignDocument(ViewConfig config) throws RestApiException {
+        DesignDocDiff first = null;
+        for (int attempt = 1; ; attempt++) {
+            JsonObject current = getDesignDocument(config.getBucketName(), config.getDesign());
+            DesignDocDiff diff = DesignDocDiff.compute(config, current);
+            if (first == null) {
+                first = diff;
+            }
+            if (!diff.hasChanges()) {
+                logger.debug("Design document {}/{} is up to date", config.getBucketName(), config.getDesign());
+                return first;
+            }
+
+            try {
+                putDesignDocument(config.getBucketName(), config.getDesign(),
+                        DesignDocDiff.merge(current, config.getDefinition()));
+                return first;
+            } catch (RestApiException ex) {
+                if (!ex.isConflict() || attempt >= this.config.getConflictAttempts()) {
+                    throw ex;
+                }
+            }
+
+            long backoff = this.config.getRetryPolicy().backoff(attempt);
+            logger.debug("Design document {}/{} changed concurrently, merging again in {}ms",
+                    config.getBucketName(), config.getDesign(), backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RestApiException(ex);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> awaitViews(ViewConfig config, long timeout) {
+        return getReadinessWatcher().watch(config, timeout);
+    }
+
+    private synchronized ViewReadinessWatcher getReadinessWatcher() {
+        if (readinessWatcher == null) {
+            readinessWatcher = new ViewReadinessWatcher(this);
+        }
+        return readinessWatcher;
+    }
+
+    @Override
+    public JsonObject getDesignDocument(String bucketName, String design) throws RestApiException {
+        final HttpGet req = new HttpGet();
+        req.setHeader("Content-Type", "application/json");
+
+        try {
+            return withRetry(req, designPath(bucketName, design), () -> readResponse(req, res -> {
+                JsonObject document = extractResponse(res, req, 200).getAsJsonObject();
+                String rev = metaRevision(res.getFirstHeader(META_HEADER));
+                if (rev != null) {
+                    document.addProperty(DesignDocDiff.REV, rev);
+                }
+                return document;
+            }));
+        }
+        catch (RestApiException e) {
+            if (e.getStatusLine() != null && e.getStatusLine().getStatusCode() == 404) {
+                return null;
+            }
+            else {
+                throw e;
+            }
+        }
+        catch (IOException e) {
+            throw new RestApiException(e);
+        }
+    }
+
+    @Override
+    public void putDesignDocument(String bucketName, String design, JsonObject document) throws RestApiException {
+        HttpPut req = new HttpPut();
+        req.setHeader("Content-Type", "application/json");
+        try {
+            req.setEntity(new StringEntity(document.toString()));
+        } catch (UnsupportedEncodingException ex) {
+            throw new RestApiException(ex);
+        }
+
+        try {
+            getResponseJson(req, designPath(bucketName, design), 201);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    @Override
+    public void deleteDesignDocument(String bucketName, String design) throws RestApiException {
+        try {
+            getResponseJson(new HttpDelete(), designPath(bucketName, design), 200);
+        } catch (IOException ex) {
+            throw new RestApiException(ex);
+        }
+    }
+
+    /**
+     * Revision of a design document in the {@value #META_HEADER} header, e.g.
+     * {@code {"id":"_design/x","rev":"1-0b4f2b8a","type":"json"}}. Servers since 3.0 send it only there,
+     * older ones only in the {@code _rev} of the body.
+     */
+    private String metaRevision(Header header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            JsonElement rev = new JsonParser().parse(header.getValue()).getAsJsonObject().get("rev");
+            return rev != null && rev.isJsonPrimitive() ? rev.getAsString() : null;
+        } catch (JsonParseException | IllegalStateException ex) {
+            logger.warn("Invalid {} header: {}", META_HEADER, header.getValue());
+            return null;
+        }
+    }
+
+    private static String designPath(String bucketName, String design) {
+        return new StringBuilder()
+                .append('/').append("couchBase/").append(bucketName)
+                .append("/_design/").append(design)
+                .toString();
+    }
+}
@@ -0,0 +1,241 @@
+package com.couchbase.cbadmin.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * Difference between the views of a {@link ViewConfig} and the design
+ * document stored on the server.
+ * <p>
+ * Map and reduce functions are compared by the hash of their normalized
+ * source, so formatting differences (line endings, indentation, blank lines)
+ * are not treated as modifications and do not cause the index to be rebuilt.
+ */
+public class DesignDocDiff implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public enum Change { UNCHANGED, ADDED, MODIFIED, DELETED }
+
+  /**
+   * Revision property of a design document.
+   */
+  public static final String REV = "_rev";
+
+  private final String bucketName;
+  private final String design;
+  private final Map<String,Change> changes = new LinkedHashMap<String, Change>();
+
+  private DesignDocDiff(String bucketName, String design) {
+    this.bucketName = bucketName;
+    this.design = design;
+  }
+
+  /**
+   * Compares the views defined by the configuration with the server's copy.
+   *
+   * @param config The configuration to be applied
+   * @param current The design document as returned by the server, or null
+   *                if it does not exist
+   * @return the diff
+   */
+  public static DesignDocDiff compute(ViewConfig config, JsonObject current) {
+    return compute(config, current, false);
+  }
+
+  /**
+   * Compares the views defined by the configuration with the server's copy.
+   *
+   * @param config The configuration to be applied
+   * @param current The design document as returned by the server, or null
+   *                if it does not exist
+   * @param prune Whether views present only on the server are reported as
+   *              {@link Change#DELETED}. Otherwise they are ignored.
+   * @return the diff
+   */
+  public static DesignDocDiff compute(ViewConfig config, JsonObject current, boolean prune) {
+    DesignDocDiff diff = new DesignDocDiff(config.getBucketName(), config.getDesign());
+    JsonObject currentViews = getViews(current);
+    for (Entry<String,JsonElement> ent : getViews(config.getDefinition()).entrySet()) {
+      JsonElement existing = currentViews.get(ent.getKey());
+      Change change;
+      if (existing == null || !existing.isJsonObject()) {
+        change = Change.ADDED;
+      } else if (hash(ent.getValue().getAsJsonObject()).equals(hash(existing.getAsJsonObject()))) {
+        change = Change.UNCHANGED;
+      } else {
+        change = Change.MODIFIED;
+      }
+      diff.changes.put(ent.getKey(), change);
+    }
+    if (prune) {
+      for (Entry<String,JsonElement> ent : currentViews.entrySet()) {
+        if (!diff.changes.containsKey(ent.getKey())) {
+          diff.changes.put(ent.getKey(), Change.DELETED);
+        }
+      }
+    }
+    return diff;
+  }
+
+  /**
+   * Merges the views of the server's design document into a copy of the definition.
+   * Views of the definition take precedence, views only present on the server are kept.
+   * The revision of the server's document is carried over, so the server rejects
+   * the copy with 409 Conflict if the document changed since it was read.
+   *
+   * @param current The server's design document, may be null
+   * @param definition The design document to be applied
+   * @return the merged copy
+   */
+  public static JsonObject merge(JsonObject current, JsonObject definition) {
+    JsonObject merged = new JsonParser().parse(definition.toString()).getAsJsonObject();
+    JsonObject views = merged.get("views").getAsJsonObject();
+    for (Entry<String, JsonElement> entry : getViews(current).entrySet()) {
+      if (!views.has(entry.getKey())) {
+        views.add(entry.getKey(), entry.getValue());
+      }
+    }
+    return withRevision(current, merged);
+  }
+
+  /**
+   * Copies the definition to replace the server's design document, views only
+   * present on the server are dropped. As with {@link #merge}, the revision of
+   * the server's document is carried over.
+   *
+   * @param current The server's design document, may be null
+   * @param definition The design document to be applied
+   * @return the copy
+   */
+  public static JsonObject replace(JsonObject current, JsonObject definition) {
+    return withRevision(current, new JsonParser().parse(definition.toString()).getAsJsonObject());
+  }
+
+  private static JsonObject withRevision(JsonObject current, JsonObject document) {
+    JsonElement rev = current != null ? current.get(REV) : null;
+    if (rev != null && !rev.isJsonNull()) {
+      document.add(REV, rev);
+    }
+    return document;
+  }
+
+  static JsonObject getViews(JsonObject design) {
+    if (design == null) {
+      return new JsonObject();
+    }
+    JsonElement views = design.get("views");
+    if (views == null || !views.isJsonObject()) {
+      return new JsonObject();
+    }
+    return views.getAsJsonObject();
+  }
+
+  /**
+   * Normalizes the source of a view function. Line endings are unified,
+   * each line is trimmed and blank lines are dropped.
+   *
+   * @param function The function source, may be null
+   * @return the normalized source, empty string for null
+   */
+  public static String normalize(String function) {
+    if (function == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(function.length());
+    for (String line : function.split("\r\n|\r|\n")) {
+      String trimmed = line.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(trimmed);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Computes the hash of a view from its normalized map and reduce functions.
+   *
+   * @param map The map function
+   * @param reduce The reduce function, may be null
+   * @return hex encoded SHA-1 hash
+   */
+  public static String hash(String map, String reduce) {
+    return Hex.encodeHexString(DigestUtils.sha(normalize(map) + '\u0000' + normalize(reduce)));
+  }
+
+  static String hash(JsonObject view) {
+    return hash(getString(view, "map"), getString(view, "reduce"));
+  }
+
+  private static String getString(JsonObject obj, String name) {
+    JsonElement e = obj.get(name);
+    return e == null || e.isJsonNull() ? null : e.getAsString();
+  }
+
+  public String getBucketName() {
+    return bucketName;
+  }
+
+  public String getDesign() {
+    return design;
+  }
+
+  /**
+   * Checks whether applying the configuration would modify the design document
+   * @return true if any view was added, modified or deleted
+   */
+  public boolean hasChanges() {
+    for (Change change : changes.values()) {
+      if (change != Change.UNCHANGED) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public Map<String,Change> getChanges() {
+    return Collections.unmodifiableMap(changes);
+  }
+
+  public Collection<String> getUnchanged() {
+    return getViewNames(Change.UNCHANGED);
+  }
+
+  public Collection<String> getAdded() {
+    return getViewNames(Change.ADDED);
+  }
+
+  public Collection<String> getModified() {
+    return getViewNames(Change.MODIFIED);
+  }
+
+  public Collection<String> getDeleted() {
+    return getViewNames(Change.DELETED);
+  }
+
+  private Collection<String> getViewNames(Change change) {
+    List<String> names = new ArrayList<String>();
+    for (Entry<String,Change> ent : changes.entrySet()) {
+      if (ent.getValue() == change) {
+        names.add(ent.getKey());
+      }
+    }
+    return names;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Design %s/%s unchanged=%s added=%s modified=%s deleted=%s",
+            bucketName, design, getUnchanged(), getAdded(), getModified(), getDeleted());
+  }
+}
@@ -0,0 +1,42 @@
+package com.couchbase.cbadmin.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the logical endpoint of each request path, so a request to a path
+ * seen before is measured without building its endpoint again. The cache
+ * keeps at most {@link #MAX_PATHS} paths per method, further paths are
+ * resolved on every request.
+ */
+final class EndpointKeys {
+  static final int MAX_PATHS = 1024;
+
+  private static final ConcurrentMap<String,ConcurrentMap<String,String>> BY_METHOD =
+      new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+  private EndpointKeys() {
+  }
+
+  /**
+   * @see AdminMetrics#endpoint(String, String)
+   */
+  static String of(String method, String path) {
+    ConcurrentMap<String,String> paths = BY_METHOD.get(method);
+    if (paths == null) {
+      ConcurrentMap<String,String> created = new ConcurrentHashMap<String, String>();
+      paths = BY_METHOD.putIfAbsent(method, created);
+      if (paths == null) {
+        paths = created;
+      }
+    }
+    String endpoint = paths.get(path);
+    if (endpoint == null) {
+      endpoint = AdminMetrics.endpoint(method, path);
+      if (paths.size() < MAX_PATHS) {
+        paths.putIfAbsent(path, endpoint);
+      }
+    }
+    return endpoint;
+  }
+}
@@ -0,0 +1,175 @@
+package com.couchbase.cbadmin.client;
+
+import com.google.gson.JsonObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link AdminMetrics} keeping latency histograms, status code
+ * counters, transferred bytes and retries per logical endpoint.
+ * <p>
+ * Recording a request to a known endpoint does not allocate. The clients
+ * cache the endpoint of each request path, so it is only built the first
+ * time a bucket, design document or view is requested. Use
+ * {@link #snapshot()} or {@link #toJson()} to export the values, e.g. from a
+ * monitoring agent.
+ */
+public class EndpointMetrics implements AdminMetrics {
+  private static final int MAX_STATUS = 600;
+
+  private final ConcurrentMap<String,Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+  private static class Endpoint {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS);
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+  }
+
+  /**
+   * Metrics of one endpoint at the time of {@link #snapshot()}.
+   * Latencies are in microseconds.
+   */
+  public static class Snapshot {
+    private final LatencyHistogram.Snapshot latency;
+    private final Map<Integer,Long> statuses;
+    private final long failures;
+    private final long retries;
+    private final long bytesIn;
+    private final long bytesOut;
+
+    Snapshot(Endpoint endpoint) {
+      latency = endpoint.latency.snapshot();
+      Map<Integer,Long> counts = new TreeMap<Integer, Long>();
+      for (int i = 0; i < MAX_STATUS; i++) {
+        long count = endpoint.statuses.get(i);
+        if (count > 0) {
+          counts.put(i, count);
+        }
+      }
+      statuses = Collections.unmodifiableMap(counts);
+      failures = endpoint.failures.sum();
+      retries = endpoint.retries.sum();
+      bytesIn = endpoint.bytesIn.sum();
+      bytesOut = endpoint.bytesOut.sum();
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+      return latency;
+    }
+
+    /**
+     * @return number of responses by status code
+     */
+    public Map<Integer,Long> getStatuses() {
+      return statuses;
+    }
+
+    /**
+     * @return number of requests which received no response
+     */
+    public long getFailures() {
+      return failures;
+    }
+
+    public long getRetries() {
+      return retries;
+    }
+
+    public long getBytesIn() {
+      return bytesIn;
+    }
+
+    public long getBytesOut() {
+      return bytesOut;
+    }
+
+    public JsonObject toJson() {
+      JsonObject obj = new JsonObject();
+      obj.addProperty("count", latency.getCount());
+      obj.addProperty("failures", failures);
+      obj.addProperty("retries", retries);
+      obj.addProperty("bytesIn", bytesIn);
+      obj.addProperty("bytesOut", bytesOut);
+      JsonObject codes = new JsonObject();
+      for (Map.Entry<Integer,Long> ent : statuses.entrySet()) {
+        codes.addProperty(ent.getKey().toString(), ent.getValue());
+      }
+      obj.add("statuses", codes);
+      JsonObject micros = new JsonObject();
+      micros.addProperty("mean", latency.getMean());
+      micros.addProperty("p50", latency.getValueAtPercentile(50));
+      micros.addProperty("p90", latency.getValueAtPercentile(90));
+      micros.addProperty("p99", latency.getValueAtPercentile(99));
+      micros.addProperty("p999", latency.getValueAtPercentile(99.9));
+      micros.addProperty("max", latency.getMax());
+      obj.add("latencyMicros", micros);
+      return obj;
+    }
+  }
+
+  private Endpoint get(String endpoint) {
+    Endpoint ep = endpoints.get(endpoint);
+    if (ep == null) {
+      ep = endpoints.computeIfAbsent(endpoint, k -> new Endpoint());
+    }
+    return ep;
+  }
+
+  @Override
+  public void onResponse(String endpoint, int status, long latencyNanos, long bytesOut, long bytesIn) {
+    Endpoint ep = get(endpoint);
+    ep.latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    if (status >= 0 && status < MAX_STATUS) {
+      ep.statuses.incrementAndGet(status);
+    }
+    ep.bytesOut.add(bytesOut);
+    ep.bytesIn.add(bytesIn);
+  }
+
+  @Override
+  public void onFailure(String endpoint, long latencyNanos, long bytesOut) {
+    Endpoint ep = get(endpoint);
+    ep.latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    ep.failures.increment();
+    ep.bytesOut.add(bytesOut);
+  }
+
+  @Override
+  public void onRetry(String endpoint) {
+    get(endpoint).retries.increment();
+  }
+
+  /**
+   * @return metrics by logical endpoint, sorted by endpoint
+   */
+  public Map<String,Snapshot> snapshot() {
+    Map<String,Snapshot> snapshot = new TreeMap<String, Snapshot>();
+    for (Map.Entry<String,Endpoint> ent : endpoints.entrySet()) {
+      snapshot.put(ent.getKey(), new Snapshot(ent.getValue()));
+    }
+    return snapshot;
+  }
+
+  public JsonObject toJson() {
+    JsonObject obj = new JsonObject();
+    for (Map.Entry<String,Snapshot> ent : snapshot().entrySet()) {
+      obj.add(ent.getKey(), ent.getValue().toJson());
+    }
+    return obj;
+  }
+
+  /**
+   * Drops all recorded values.
+   */
+  public void reset() {
+    endpoints.clear();
+  }
+}
@@ -0,0 +1,211 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Node;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Spreads cluster wide admin requests over the healthy nodes of a cluster.
+ * <p>
+ * Each node keeps an exponentially weighted moving average of its response
+ * latency. A request goes to the better of two randomly picked nodes, scored
+ * by the average multiplied by the number of its requests in flight, so the
+ * fastest nodes get most requests without all clients piling on one of them.
+ * The average of a node decays while it gets no requests, so a node which
+ * was slow once is probed again.
+ * <p>
+ * A node failing {@code ejectAfter} times in a row is ejected. It is
+ * readmitted after the ejection time, which doubles with every further
+ * ejection up to {@code maxEjectionTime}. Nodes which are not
+ * {@link Node#isOk() ok} in the latest node listing are not used. The entry
+ * point is used when no node is available.
+ */
+public class NodeBalancer {
+  private static final double ALPHA = 0.3;
+  private static final double DECAY_NANOS = 10e9;
+
+  /**
+   * Latency and health of one node.
+   */
+  public static class Target {
+    private final URL url;
+    private double latency;
+    private boolean measured;
+    private long measuredAt;
+    private int inFlight;
+    private int failures;
+    private int ejections;
+    private long ejectedUntil;
+
+    Target(URL url) {
+      this.url = url;
+    }
+
+    public URL getUrl() {
+      return url;
+    }
+
+    /**
+     * @return average latency in millis, 0 if not measured yet
+     */
+    public synchronized double getLatency() {
+      return latency;
+    }
+
+    public synchronized boolean isEjected() {
+      return ejectedUntil > System.currentTimeMillis();
+    }
+
+    synchronized double score() {
+      double decay = Math.exp(-(System.nanoTime() - measuredAt) / DECAY_NANOS);
+      return latency * decay * (inFlight + 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("%s latency=%.1fms inFlight=%d ejected=%s",
+              url, latency, inFlight, ejectedUntil > System.currentTimeMillis());
+    }
+  }
+
+  private final URL entryPoint;
+  private final int ejectAfter;
+  private final long ejectionTime;
+  private final long maxEjectionTime;
+  private volatile List<Target> targets;
+  private final Map<URL,Target> byUrl = new HashMap<URL, Target>();
+
+  public NodeBalancer(URL entryPoint, int ejectAfter, long ejectionTime, long maxEjectionTime) {
+    this.entryPoint = entryPoint;
+    this.ejectAfter = ejectAfter;
+    this.ejectionTime = ejectionTime;
+    this.maxEjectionTime = maxEjectionTime;
+    Target target = new Target(entryPoint);
+    byUrl.put(entryPoint, target);
+    targets = Collections.singletonList(target);
+  }
+
+  /**
+   * Replaces the candidates by the healthy active nodes of the listing.
+   * Statistics of nodes which stay in the cluster are kept.
+   * <p>
+   * The listing only has the plain http REST address of each node, so an
+   * entry point using another scheme, e.g. https, stays the only candidate.
+   */
+  public synchronized void update(List<Node> nodes) {
+    if (!isBalanced()) {
+      return;
+    }
+    List<Target> next = new ArrayList<Target>(nodes.size());
+    Map<URL,Target> known = new HashMap<URL, Target>();
+    for (Node node : nodes) {
+      if (!node.isOk() || node.getRestUrl() == null) {
+        continue;
+      }
+      Target target = byUrl.get(node.getRestUrl());
+      if (target == null) {
+        target = new Target(node.getRestUrl());
+      }
+      known.put(target.url, target);
+      next.add(target);
+    }
+    if (next.isEmpty()) {
+      // keep the current candidates rather than having none
+      return;
+    }
+    byUrl.clear();
+    byUrl.putAll(known);
+    targets = Collections.unmodifiableList(next);
+  }
+
+  /**
+   * Picks the node for the next request.
+   *
+   * @param exclude nodes which should not be used, e.g. those already tried
+   * @return the node, or null if all nodes are ejected or excluded
+   */
+  public Target select(Collection<URL> exclude) {
+    List<Target> current = targets;
+    List<Target> available = new ArrayList<Target>(current.size());
+    for (Target target : current) {
+      if (!target.isEjected() && !exclude.contains(target.url)) {
+        available.add(target);
+      }
+    }
+    if (available.isEmpty()) {
+      return null;
+    }
+    if (available.size() == 1) {
+      return available.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(available.size());
+    int second = random.nextInt(available.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    Target a = available.get(first);
+    Target b = available.get(second);
+    return a.score() <= b.score() ? a : b;
+  }
+
+  /**
+   * @return whether requests are spread over the nodes of the cluster
+   */
+  public boolean isBalanced() {
+    return "http".equalsIgnoreCase(entryPoint.getProtocol());
+  }
+
+  public URL getEntryPoint() {
+    return entryPoint;
+  }
+
+  public List<Target> getTargets() {
+    return targets;
+  }
+
+  void onStart(Target target) {
+    synchronized (target) {
+      target.inFlight++;
+    }
+  }
+
+  void onSuccess(Target target, long latencyNanos) {
+    double millis = latencyNanos / 1e6;
+    synchronized (target) {
+      target.inFlight--;
+      target.latency = target.measured ? ALPHA * millis + (1 - ALPHA) * target.latency : millis;
+      target.measured = true;
+      target.measuredAt = System.nanoTime();
+      target.failures = 0;
+      target.ejections = 0;
+    }
+  }
+
+  void onFailure(Target target) {
+    synchronized (target) {
+      target.inFlight--;
+      target.failures++;
+      if (target.failures >= ejectAfter) {
+        long time = Math.min(maxEjectionTime, ejectionTime << Math.min(target.ejections, 20));
+        target.ejectedUntil = System.currentTimeMillis() + time;
+        target.ejections++;
+        target.failures = 0;
+        // start over on readmission instead of keeping a stale average
+        target.measured = false;
+        target.latency = 0;
+      }
+    }
+  }
+
+  /**
+   * Ends a request which neither proves nor disproves the node's health.
+   */
+  void onDone(Target target) {
+    synchronized (target) {
+      target.inFlight--;
+    }
+  }
+}
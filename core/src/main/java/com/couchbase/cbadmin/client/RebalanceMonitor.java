@@ -0,0 +1,291 @@
+package com.couchbase.cbadmin.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Polls the rebalance progress of a cluster and pushes it to listeners.
+ * <p>
+ * All listeners share one poll loop, which runs while at least one listener
+ * is registered. The loop polls every {@code minInterval} while the progress
+ * moves and doubles the interval up to {@code maxInterval} while it does
+ * not, so an idle or stalled cluster is not hammered.
+ */
+public class RebalanceMonitor {
+  private static final Logger logger = LoggerFactory.getLogger(RebalanceMonitor.class);
+
+  /**
+   * Receives rebalance events. Methods are called on the monitor's thread
+   * and should return quickly.
+   */
+  public interface Listener {
+    /**
+     * Called after every sample taken while a rebalance is running.
+     */
+    default void onProgress(Progress progress) {
+    }
+
+    /**
+     * Called once when the progress has not moved for the stall timeout.
+     *
+     * @param stalledFor time since the progress last moved, in millis
+     */
+    default void onStall(Progress progress, long stalledFor) {
+    }
+
+    /**
+     * Called when a rebalance finished or was stopped, and on the first
+     * sample if no rebalance is running.
+     */
+    default void onComplete(RebalanceInfo info) {
+    }
+
+    default void onError(RestApiException ex) {
+    }
+  }
+
+  /**
+   * One sample of a running rebalance.
+   */
+  public static class Progress {
+    private final RebalanceInfo info;
+    private final Map<String,Float> deltas;
+    private final long estimatedCompletion;
+
+    Progress(RebalanceInfo info, Map<String,Float> deltas, long estimatedCompletion) {
+      this.info = info;
+      this.deltas = Collections.unmodifiableMap(deltas);
+      this.estimatedCompletion = estimatedCompletion;
+    }
+
+    public RebalanceInfo getInfo() {
+      return info;
+    }
+
+    /**
+     * @return overall progress, between 0.0 and 100.0
+     */
+    public float getProgress() {
+      return info.getProgress();
+    }
+
+    /**
+     * @return change of each node's progress since the previous sample,
+     * in percent points
+     */
+    public Map<String,Float> getDeltas() {
+      return deltas;
+    }
+
+    /**
+     * @return estimated completion time in epoch millis, or -1 if unknown
+     */
+    public long getEstimatedCompletion() {
+      return estimatedCompletion;
+    }
+  }
+
+  private final CouchbaseAdmin client;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private long minInterval = 500;
+  private long maxInterval = 10000;
+  private long stallTimeout = 60000;
+
+  private ScheduledExecutorService scheduler;
+  private final Object sweepLock = new Object();
+  private long interval;
+  private Boolean running;
+  private Map<String,Number> lastDetails = Collections.emptyMap();
+  private float lastProgress;
+  private long lastSampleAt;
+  private long lastMoveAt;
+  private boolean stallReported;
+  private double rate;
+
+  public RebalanceMonitor(CouchbaseAdmin client) {
+    this.client = client;
+  }
+
+  /**
+   * @param minInterval poll interval while the progress moves, in millis
+   */
+  public void setMinInterval(long minInterval) {
+    this.minInterval = minInterval;
+  }
+
+  /**
+   * @param maxInterval poll interval of an idle or stalled rebalance, in millis
+   */
+  public void setMaxInterval(long maxInterval) {
+    this.maxInterval = maxInterval;
+  }
+
+  public long getMinInterval() {
+    return minInterval;
+  }
+
+  public long getMaxInterval() {
+    return maxInterval;
+  }
+
+  /**
+   * @param stallTimeout time without progress after which listeners are
+   *                     warned, in millis
+   */
+  public void setStallTimeout(long stallTimeout) {
+    this.stallTimeout = stallTimeout;
+  }
+
+  /**
+   * Registers a listener, starting the poll loop if needed.
+   */
+  public synchronized void addListener(Listener listener) {
+    listeners.add(listener);
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "rebalance-monitor");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      running = null;
+      interval = minInterval;
+      schedule(scheduler, 0);
+    }
+  }
+
+  /**
+   * Unregisters a listener, stopping the poll loop when none remain.
+   */
+  public synchronized void removeListener(Listener listener) {
+    listeners.remove(listener);
+    if (listeners.isEmpty()) {
+      stop();
+    }
+  }
+
+  /**
+   * Stops polling. Listeners stay registered until removed.
+   */
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  /**
+   * Schedules the next sweep of the poll loop running on the executor. A
+   * loop whose executor was stopped or replaced ends, and sweeps of an ending
+   * loop never overlap with those of its successor.
+   */
+  private synchronized void schedule(final ScheduledExecutorService executor, long delay) {
+    if (executor != scheduler) {
+      return;
+    }
+    executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (sweepLock) {
+          if (!isCurrent(executor)) {
+            return;
+          }
+          try {
+            sweep();
+          } catch (RuntimeException ex) {
+            logger.warn("While polling rebalance progress", ex);
+            interval = maxInterval;
+          } finally {
+            schedule(executor, interval);
+          }
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized boolean isCurrent(ScheduledExecutorService executor) {
+    return executor == scheduler;
+  }
+
+  private void sweep() {
+    RebalanceInfo info;
+    try {
+      info = client.getRebalanceStatus();
+    } catch (RestApiException ex) {
+      logger.debug("While polling rebalance progress", ex);
+      interval = maxInterval;
+      fire(listener -> listener.onError(ex));
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    if (info.isComplete()) {
+      if (running == null || running) {
+        fire(listener -> listener.onComplete(info));
+      }
+      running = false;
+      lastDetails = Collections.emptyMap();
+      interval = maxInterval;
+      return;
+    }
+
+    float progress = info.getProgress();
+    Map<String,Float> deltas = new HashMap<String, Float>();
+    for (Map.Entry<String,Number> ent : info.getDetails().entrySet()) {
+      Number previous = lastDetails.get(ent.getKey());
+      deltas.put(ent.getKey(), ent.getValue().floatValue()
+              - (previous == null ? 0 : previous.floatValue()));
+    }
+
+    if (running == null || !running) {
+      // first sample of this rebalance
+      running = true;
+      rate = 0;
+      lastMoveAt = now;
+      stallReported = false;
+      interval = minInterval;
+    } else if (progress > lastProgress) {
+      double sampleRate = (progress - lastProgress) / Math.max(1, now - lastSampleAt);
+      rate = rate == 0 ? sampleRate : 0.3 * sampleRate + 0.7 * rate;
+      lastMoveAt = now;
+      stallReported = false;
+      interval = minInterval;
+    } else {
+      interval = Math.min(maxInterval, interval * 2);
+    }
+
+    long eta = rate > 0 ? now + (long) ((100 - progress) / rate) : -1;
+    Progress sample = new Progress(info, deltas, eta);
+    fire(listener -> listener.onProgress(sample));
+
+    long stalledFor = now - lastMoveAt;
+    if (!stallReported && stalledFor >= stallTimeout) {
+      stallReported = true;
+      fire(listener -> listener.onStall(sample, stalledFor));
+    }
+
+    lastDetails = info.getDetails();
+    lastProgress = progress;
+    lastSampleAt = now;
+  }
+
+  /**
+   * Calls each listener, a failing listener does not stop the others nor
+   * the poll loop.
+   */
+  private void fire(Consumer<Listener> event) {
+    for (Listener listener : listeners) {
+      try {
+        event.accept(listener);
+      } catch (RuntimeException ex) {
+        logger.warn("Rebalance listener {} failed", listener, ex);
+      }
+    }
+  }
+}
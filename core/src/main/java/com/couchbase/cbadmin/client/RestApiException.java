@@ -43,6 +43,7 @@ import java.util.List;
  */
 public class RestApiException extends Exception {
   private final StatusLine status;
+  private final boolean responseStatus;
   private JsonElement json = null;
   private HttpRequestBase request = null;
 
@@ -62,21 +63,31 @@ public class RestApiException extends Exception {
   public RestApiException() {
     super();
     status = defaultStatusLine();
+    responseStatus = false;
   }
 
   public RestApiException(String msg) {
     super(msg);
     status = defaultStatusLine(msg, 408);
+    responseStatus = false;
+  }
+
+  public RestApiException(String msg, int code) {
+    super(msg);
+    status = defaultStatusLine(msg, code);
+    responseStatus = false;
   }
 
 
   public RestApiException(JsonElement js, StatusLine st) {
     status = st;
+    responseStatus = true;
     json = js;
   }
 
   public RestApiException(JsonElement js, StatusLine st, HttpRequestBase req) {
     status = st;
+    responseStatus = true;
     json = js;
     request = req;
   }
@@ -84,12 +95,14 @@ public class RestApiException extends Exception {
   public RestApiException(String s, JsonElement badJson) {
     super(s);
     status = defaultStatusLine();
+    responseStatus = false;
     json = badJson;
   }
 
   public RestApiException(Throwable e) {
     super(e);
     status = defaultStatusLine();
+    responseStatus = false;
   }
 
   public JsonElement getJson() {
@@ -100,6 +113,22 @@ public class RestApiException extends Exception {
     return status;
   }
 
+  /**
+   * @return true if the status line was received from the server, false if
+   *         it is the default of a client side failure
+   */
+  public boolean hasResponseStatus() {
+    return responseStatus;
+  }
+
+  /**
+   * @return true if the server rejected a write because the document
+   *         changed since it was read
+   */
+  public boolean isConflict() {
+    return status != null && status.getStatusCode() == 409;
+  }
+
   @Override
   public String getMessage() {
     List<String> msgList = new ArrayList<String>();
@@ -0,0 +1,137 @@
+package com.couchbase.cbadmin.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy of idempotent admin requests.
+ * <p>
+ * An idempotent request is retried when no response was received or the
+ * server answered with one of the retryable status codes, e.g. 503 while a
+ * node warms up. Other requests, e.g. bucket creation, are retried only on
+ * 503, which the server sends without processing the request.
+ * The delay before each retry grows exponentially and is fully jittered, so
+ * clients booting together do not retry in lockstep.
+ * <p>
+ * Retries are limited by a budget shared by all clients using the policy.
+ * Each request adds {@code budgetRatio} tokens up to {@code budgetMax} and
+ * each retry takes one, so a cluster which is really down is not flooded by
+ * retries.
+ */
+public class RetryPolicy {
+  /**
+   * Policy which never retries.
+   */
+  public static final RetryPolicy NONE = new RetryPolicy().maxAttempts(1);
+
+  private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+          new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE")));
+
+  private int maxAttempts = 4;
+  private long initialBackoff = 100;
+  private long maxBackoff = 5000;
+  private double multiplier = 2;
+  private Set<Integer> retryableStatuses = new HashSet<Integer>(Arrays.asList(502, 503, 504));
+  private double budgetRatio = 0.2;
+  private double budgetMax = 20;
+
+  private final Object budgetLock = new Object();
+  private double budget = budgetMax;
+
+  /**
+   * @param attempts The maximal number of attempts including the first one
+   */
+  public RetryPolicy maxAttempts(int attempts) {
+    if (attempts < 1) {
+      throw new IllegalArgumentException("At least one attempt is needed");
+    }
+    maxAttempts = attempts;
+    return this;
+  }
+
+  /**
+   * @param initial The maximal delay before the first retry, in millis
+   * @param max The maximal delay before any retry, in millis
+   * @param multiplier growth of the maximal delay with each attempt
+   */
+  public RetryPolicy backoff(long initial, long max, double multiplier) {
+    initialBackoff = initial;
+    maxBackoff = max;
+    this.multiplier = multiplier;
+    return this;
+  }
+
+  public RetryPolicy retryableStatuses(Integer... statuses) {
+    retryableStatuses = new HashSet<Integer>(Arrays.asList(statuses));
+    return this;
+  }
+
+  /**
+   * @param ratio retries earned by each request
+   * @param max maximal number of retries which can be saved up
+   */
+  public RetryPolicy budget(double ratio, double max) {
+    synchronized (budgetLock) {
+      budgetRatio = ratio;
+      budgetMax = max;
+      budget = max;
+    }
+    return this;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @return true if requests of the method can be repeated without side effects
+   */
+  public boolean isIdempotent(String method) {
+    return IDEMPOTENT_METHODS.contains(method);
+  }
+
+  /**
+   * @param method the request method
+   * @param status the response status, or -1 if there was no response
+   */
+  public boolean isRetryable(String method, int status) {
+    if (isIdempotent(method)) {
+      return status < 0 || retryableStatuses.contains(status);
+    }
+    return status == 503 && retryableStatuses.contains(status);
+  }
+
+  /**
+   * @param attempt the number of the failed attempt, starting at 1
+   * @return delay before the next attempt, in millis
+   */
+  public long backoff(int attempt) {
+    double ceiling = initialBackoff * Math.pow(multiplier, attempt - 1);
+    long max = (long) Math.min(maxBackoff, ceiling);
+    return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong(max + 1);
+  }
+
+  void onRequest() {
+    synchronized (budgetLock) {
+      budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+  }
+
+  /**
+   * Takes one retry from the budget.
+   *
+   * @return false if the budget is exhausted
+   */
+  boolean acquireRetry() {
+    synchronized (budgetLock) {
+      if (budget < 1) {
+        return false;
+      }
+      budget -= 1;
+      return true;
+    }
+  }
+}
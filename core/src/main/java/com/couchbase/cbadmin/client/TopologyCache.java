@@ -0,0 +1,156 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Bucket;
+import com.couchbase.cbadmin.assets.NodeGroupList;
+import com.couchbase.cbadmin.assets.NodeList;
+import com.google.gson.JsonElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes the node, bucket and group listings of a cluster.
+ * <p>
+ * Entries expire after a fixed TTL and are dropped by {@link #invalidate()},
+ * which the owning {@link CouchbaseAdminImpl} calls after every mutating
+ * request. Optionally a watcher thread long-polls
+ * {@code /pools/default?waitChange=..&etag=..} and invalidates the cache
+ * only when the server reports a new etag, which allows a long TTL without
+ * serving stale topology.
+ */
+public class TopologyCache {
+  private static final Logger logger = LoggerFactory.getLogger(TopologyCache.class);
+
+  /**
+   * Fetches a fresh value from the server
+   */
+  interface Loader<T> {
+    T load() throws RestApiException;
+  }
+
+  private static class Entry<T> {
+    T value;
+    long loadedAt;
+    long generation = -1;
+  }
+
+  private final long ttl;
+  private final AtomicLong generation = new AtomicLong();
+  private final Entry<NodeList> nodes = new Entry<NodeList>();
+  private final Entry<Map<String,Bucket>> buckets = new Entry<Map<String, Bucket>>();
+  private final Entry<NodeGroupList> groups = new Entry<NodeGroupList>();
+  private volatile Thread watcher;
+  private volatile String etag;
+
+  /**
+   * @param ttl time to keep fetched values, in millis
+   */
+  public TopologyCache(long ttl) {
+    this.ttl = ttl;
+  }
+
+  NodeList getNodes(Loader<NodeList> loader) throws RestApiException {
+    return get(nodes, loader);
+  }
+
+  Map<String,Bucket> getBuckets(Loader<Map<String,Bucket>> loader) throws RestApiException {
+    return get(buckets, loader);
+  }
+
+  NodeGroupList getGroupList(Loader<NodeGroupList> loader) throws RestApiException {
+    return get(groups, loader);
+  }
+
+  private <T> T get(Entry<T> entry, Loader<T> loader) throws RestApiException {
+    // one fetch per entry at a time, concurrent callers wait for its result
+    synchronized (entry) {
+      long gen = generation.get();
+      if (entry.generation == gen && System.currentTimeMillis() - entry.loadedAt < ttl) {
+        return entry.value;
+      }
+      T value = loader.load();
+      entry.value = value;
+      entry.loadedAt = System.currentTimeMillis();
+      entry.generation = gen;
+      return value;
+    }
+  }
+
+  /**
+   * Drops all cached values. The next read fetches from the server.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Starts a daemon thread invalidating the cache whenever the cluster's
+   * pool etag changes.
+   *
+   * @param client The client used for the long-poll requests
+   * @param waitChange how long the server holds each request, in millis.
+   *                   Must be shorter than the client's socket timeout.
+   */
+  public synchronized void watch(final CouchbaseAdmin client, final long waitChange) {
+    if (watcher != null) {
+      return;
+    }
+    watcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        poll(client, waitChange);
+      }
+    }, "topology-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  private void poll(CouchbaseAdmin client, long waitChange) {
+    while (Thread.currentThread() == watcher) {
+      String current = etag;
+      try {
+        String path = CouchbaseAdminImpl.P_POOLS_DEFAULT + "?waitChange=" + waitChange
+                + (current != null ? "&etag=" + current : "");
+        JsonElement js = client.getJson(path);
+        JsonElement tag = js.isJsonObject() ? js.getAsJsonObject().get("etag") : null;
+        if (tag == null) {
+          logger.warn("Server does not report pool etag, topology cache relies on TTL only");
+          stop();
+          return;
+        }
+        etag = tag.getAsString();
+        if (current != null && !current.equals(etag)) {
+          logger.debug("Pool etag changed from {} to {}", current, etag);
+          invalidate();
+        }
+      } catch (IOException | RestApiException ex) {
+        logger.debug("While watching topology", ex);
+        etag = null;
+        invalidate();
+        try {
+          Thread.sleep(1000);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the etag watcher, if running. The cache itself remains usable.
+   */
+  public synchronized void stop() {
+    Thread thread = watcher;
+    watcher = null;
+    if (thread != null && thread != Thread.currentThread()) {
+      thread.interrupt();
+    }
+  }
+
+  public long getTtl() {
+    return ttl;
+  }
+}
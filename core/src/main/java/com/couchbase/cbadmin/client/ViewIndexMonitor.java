@@ -0,0 +1,503 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Node;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks index builds and view compactions of design documents.
+ * <p>
+ * Each sample requests the cluster wide {@code /pools/default/tasks} listing
+ * and the {@code /_active_tasks} listing of every node's view engine
+ * concurrently. No view is queried, so sampling does not cause any indexing.
+ * The per node tasks are preferred as they report the progress of each
+ * node; the cluster tasks are used for nodes which could not be reached.
+ * <p>
+ * The estimated completion is computed from the rate of indexed changes
+ * between the samples taken by this monitor.
+ */
+public class ViewIndexMonitor {
+  private static final Logger logger = LoggerFactory.getLogger(ViewIndexMonitor.class);
+
+  public static final String P_ACTIVE_TASKS = "/_active_tasks";
+
+  private static final String DESIGN_PREFIX = "_design/";
+
+  private static final int MAX_FETCHERS = 32;
+
+  // bounded, a node which stops answering holds a thread until the socket timeout of the client
+  private static final ThreadPoolExecutor FETCHER = new ThreadPoolExecutor(
+          MAX_FETCHERS, MAX_FETCHERS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "view-index-monitor-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  static {
+    FETCHER.allowCoreThreadTimeOut(true);
+  }
+
+  public enum TaskType { INDEXER, VIEW_COMPACTION }
+
+  /**
+   * One indexer or compaction task.
+   */
+  public static class Task {
+    private final TaskType type;
+    private final String node;
+    private final String bucket;
+    private final String design;
+    private final long changesDone;
+    private final long totalChanges;
+    private final float progress;
+
+    Task(TaskType type, String node, String bucket, String design,
+         long changesDone, long totalChanges, float progress) {
+      this.type = type;
+      this.node = node;
+      this.bucket = bucket;
+      this.design = design;
+      this.changesDone = changesDone;
+      this.totalChanges = totalChanges;
+      this.progress = progress;
+    }
+
+    public TaskType getType() {
+      return type;
+    }
+
+    /**
+     * @return the node running the task, or null for a task aggregated
+     * over the cluster
+     */
+    public String getNode() {
+      return node;
+    }
+
+    public String getBucket() {
+      return bucket;
+    }
+
+    /**
+     * @return the design document name, without the {@code _design/} prefix
+     */
+    public String getDesign() {
+      return design;
+    }
+
+    public long getChangesDone() {
+      return changesDone;
+    }
+
+    public long getTotalChanges() {
+      return totalChanges;
+    }
+
+    /**
+     * @return progress between 0.0 and 100.0
+     */
+    public float getProgress() {
+      return progress;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %s/%s@%s %.1f%%", type, bucket, design, node, progress);
+    }
+  }
+
+  /**
+   * Index state of one design document.
+   */
+  public static class Progress {
+    private final String bucket;
+    private final String design;
+    private final List<Task> tasks;
+    private final long estimatedCompletion;
+
+    Progress(String bucket, String design, List<Task> tasks, long estimatedCompletion) {
+      this.bucket = bucket;
+      this.design = design;
+      this.tasks = Collections.unmodifiableList(tasks);
+      this.estimatedCompletion = estimatedCompletion;
+    }
+
+    public String getBucket() {
+      return bucket;
+    }
+
+    public String getDesign() {
+      return design;
+    }
+
+    public List<Task> getTasks() {
+      return tasks;
+    }
+
+    /**
+     * @return true if no index build or compaction is running
+     */
+    public boolean isIdle() {
+      return tasks.isEmpty();
+    }
+
+    public boolean isIndexing() {
+      return hasTask(TaskType.INDEXER);
+    }
+
+    public boolean isCompacting() {
+      return hasTask(TaskType.VIEW_COMPACTION);
+    }
+
+    private boolean hasTask(TaskType type) {
+      for (Task task : tasks) {
+        if (task.type == type) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public long getChangesDone() {
+      long done = 0;
+      for (Task task : tasks) {
+        if (task.type == TaskType.INDEXER) {
+          done += task.changesDone;
+        }
+      }
+      return done;
+    }
+
+    public long getTotalChanges() {
+      long total = 0;
+      for (Task task : tasks) {
+        if (task.type == TaskType.INDEXER) {
+          total += task.totalChanges;
+        }
+      }
+      return total;
+    }
+
+    /**
+     * @return indexing progress between 0.0 and 100.0, weighted by the
+     * changes of each task; 100.0 when idle
+     */
+    public float getProgress() {
+      long total = getTotalChanges();
+      if (total > 0) {
+        return 100f * getChangesDone() / total;
+      }
+      float sum = 0;
+      int count = 0;
+      for (Task task : tasks) {
+        if (task.type == TaskType.INDEXER) {
+          sum += task.progress;
+          count++;
+        }
+      }
+      return count == 0 ? 100f : sum / count;
+    }
+
+    /**
+     * @return estimated completion time of the index build in epoch millis,
+     * or -1 if unknown
+     */
+    public long getEstimatedCompletion() {
+      return estimatedCompletion;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s/%s %.1f%% eta=%d tasks=%s",
+              bucket, design, getProgress(), estimatedCompletion, tasks);
+    }
+  }
+
+  private static class Sample {
+    private final long at;
+    private final long changesDone;
+    private final long totalChanges;
+
+    Sample(long at, long changesDone, long totalChanges) {
+      this.at = at;
+      this.changesDone = changesDone;
+      this.totalChanges = totalChanges;
+    }
+  }
+
+  private final CouchbaseAdmin client;
+  private final Map<String,Sample> samples = new ConcurrentHashMap<String, Sample>();
+  private long pollInterval = 1000;
+
+  public ViewIndexMonitor(CouchbaseAdmin client) {
+    this.client = client;
+  }
+
+  /**
+   * @param pollInterval interval between samples of {@link #await}, in millis
+   */
+  public void setPollInterval(long pollInterval) {
+    this.pollInterval = pollInterval;
+  }
+
+  /**
+   * Takes one sample of all running tasks.
+   *
+   * @return progress keyed by {@code bucket/design}
+   * @throws RestApiException if neither the cluster nor any node could be queried
+   */
+  public Map<String,Progress> sample() throws RestApiException {
+    List<Node> nodes = client.getNodes();
+    Future<JsonElement> clusterTasks = FETCHER.submit(new Callable<JsonElement>() {
+      @Override
+      public JsonElement call() throws Exception {
+        return client.getJson(CouchbaseAdminImpl.P_TASKS);
+      }
+    });
+    Map<String,Future<JsonElement>> nodeTasks = new LinkedHashMap<String, Future<JsonElement>>();
+    for (final Node node : nodes) {
+      if (node.getCouchUrl() == null) {
+        continue;
+      }
+      nodeTasks.put(node.getNSOtpNode(), FETCHER.submit(new Callable<JsonElement>() {
+        @Override
+        public JsonElement call() throws Exception {
+          return client.getJson(new URL(node.getCouchUrl(), P_ACTIVE_TASKS).toString());
+        }
+      }));
+    }
+
+    List<Task> tasks = new ArrayList<Task>();
+    int reported = 0;
+    for (Map.Entry<String,Future<JsonElement>> ent : nodeTasks.entrySet()) {
+      try {
+        readActiveTasks(ent.getKey(), ent.getValue().get(), tasks);
+        reported++;
+      } catch (ExecutionException ex) {
+        logger.debug("Can't get active tasks of {}", ent.getKey(), ex.getCause());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RestApiException(ex);
+      }
+    }
+    try {
+      JsonElement js = clusterTasks.get();
+      if (reported < nodeTasks.size() || nodeTasks.isEmpty()) {
+        // not all nodes reported, fill in from the cluster wide listing
+        readClusterTasks(js, tasks);
+      }
+    } catch (ExecutionException ex) {
+      if (reported == 0) {
+        throw toRestApiException(ex.getCause());
+      }
+      logger.debug("Can't get cluster tasks", ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RestApiException(ex);
+    }
+    return aggregate(tasks);
+  }
+
+  /**
+   * Samples the progress of one design document.
+   */
+  public Progress sample(String bucket, String design) throws RestApiException {
+    Progress progress = sample().get(key(bucket, design));
+    return progress != null ? progress : idle(bucket, design);
+  }
+
+  /**
+   * Waits until no index build or compaction of the design document runs.
+   *
+   * @param timeout time to wait, in millis
+   * @return the last sample
+   * @throws RestApiException on timeout
+   */
+  public Progress await(String bucket, String design, long timeout) throws RestApiException {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      Progress progress = sample(bucket, design);
+      if (progress.isIdle()) {
+        return progress;
+      }
+      logger.debug("Waiting for index {}", progress);
+      if (System.currentTimeMillis() + pollInterval > deadline) {
+        throw new RestApiException("Timed out waiting for index " + progress);
+      }
+      try {
+        Thread.sleep(pollInterval);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RestApiException(ex);
+      }
+    }
+  }
+
+  /**
+   * Waits for an index build which was just triggered. Task listings lag
+   * behind, so the design document is not taken as idle until its build
+   * was listed. A build not listed within {@code startTimeout} is assumed
+   * to have finished between two samples.
+   *
+   * @param startTimeout time to wait for the build to be listed, in millis
+   * @param timeout time to wait in total, in millis
+   * @return the last sample
+   * @throws RestApiException on timeout
+   */
+  public Progress awaitBuild(String bucket, String design, long startTimeout, long timeout) throws RestApiException {
+    long start = System.currentTimeMillis();
+    long startDeadline = start + Math.min(startTimeout, timeout);
+    while (true) {
+      Progress progress = sample(bucket, design);
+      if (!progress.isIdle()) {
+        break;
+      }
+      if (System.currentTimeMillis() + pollInterval > startDeadline) {
+        logger.debug("Index build of {}/{} not listed within {}ms", bucket, design, startTimeout);
+        return progress;
+      }
+      try {
+        Thread.sleep(pollInterval);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RestApiException(ex);
+      }
+    }
+    return await(bucket, design, Math.max(0, start + timeout - System.currentTimeMillis()));
+  }
+
+  private Map<String,Progress> aggregate(List<Task> tasks) {
+    Map<String,List<Task>> byDesign = new LinkedHashMap<String, List<Task>>();
+    for (Task task : tasks) {
+      String key = key(task.bucket, task.design);
+      List<Task> designTasks = byDesign.get(key);
+      if (designTasks == null) {
+        designTasks = new ArrayList<Task>();
+        byDesign.put(key, designTasks);
+      }
+      designTasks.add(task);
+    }
+
+    long now = System.currentTimeMillis();
+    Map<String,Progress> result = new LinkedHashMap<String, Progress>();
+    for (Map.Entry<String,List<Task>> ent : byDesign.entrySet()) {
+      Task first = ent.getValue().get(0);
+      Progress progress = new Progress(first.bucket, first.design, ent.getValue(), -1);
+      long eta = estimate(ent.getKey(), progress.getChangesDone(), progress.getTotalChanges(), now);
+      result.put(ent.getKey(), eta < 0 ? progress : new Progress(first.bucket, first.design, ent.getValue(), eta));
+    }
+    samples.keySet().retainAll(result.keySet());
+    return result;
+  }
+
+  private long estimate(String key, long done, long total, long now) {
+    Sample previous = samples.put(key, new Sample(now, done, total));
+    if (previous == null || previous.totalChanges != total || total == 0) {
+      return -1;
+    }
+    long elapsed = now - previous.at;
+    long delta = done - previous.changesDone;
+    if (elapsed <= 0 || delta <= 0) {
+      return -1;
+    }
+    return now + (long) ((double) (total - done) * elapsed / delta);
+  }
+
+  static void readActiveTasks(String node, JsonElement js, List<Task> tasks) {
+    for (JsonElement elem : js.getAsJsonArray()) {
+      JsonObject obj = elem.getAsJsonObject();
+      TaskType type = parseType(getString(obj, "type"));
+      String bucket = getString(obj, "set");
+      JsonElement designs = obj.get("design_documents");
+      if (type == null || bucket == null || designs == null || !designs.isJsonArray()) {
+        continue;
+      }
+      // design documents with the same views share one index
+      for (JsonElement design : (JsonArray) designs) {
+        tasks.add(new Task(type, node, bucket, stripPrefix(design.getAsString()),
+                getLong(obj, "changes_done"), getLong(obj, "total_changes"),
+                getFloat(obj, "progress")));
+      }
+    }
+  }
+
+  static void readClusterTasks(JsonElement js, List<Task> tasks) {
+    Set<String> reported = new HashSet<String>();
+    for (Task task : tasks) {
+      reported.add(key(task.bucket, task.design) + '\u0000' + task.type);
+    }
+    for (JsonElement elem : js.getAsJsonArray()) {
+      JsonObject obj = elem.getAsJsonObject();
+      TaskType type = parseType(getString(obj, "type"));
+      String bucket = getString(obj, "bucket");
+      String design = getString(obj, "designDocument");
+      if (type == null || bucket == null || design == null) {
+        continue;
+      }
+      design = stripPrefix(design);
+      if (reported.contains(key(bucket, design) + '\u0000' + type)) {
+        continue;
+      }
+      tasks.add(new Task(type, null, bucket, design,
+              getLong(obj, "changesDone"), getLong(obj, "totalChanges"),
+              getFloat(obj, "progress")));
+    }
+  }
+
+  private static Progress idle(String bucket, String design) {
+    return new Progress(bucket, design, Collections.<Task>emptyList(), -1);
+  }
+
+  private static String key(String bucket, String design) {
+    return bucket + "/" + design;
+  }
+
+  private static String stripPrefix(String design) {
+    return design.startsWith(DESIGN_PREFIX) ? design.substring(DESIGN_PREFIX.length()) : design;
+  }
+
+  private static TaskType parseType(String type) {
+    if ("indexer".equals(type)) {
+      return TaskType.INDEXER;
+    } else if ("view_compaction".equals(type)) {
+      return TaskType.VIEW_COMPACTION;
+    }
+    return null;
+  }
+
+  private static String getString(JsonObject obj, String name) {
+    JsonElement e = obj.get(name);
+    return e == null || e.isJsonNull() ? null : e.getAsString();
+  }
+
+  private static long getLong(JsonObject obj, String name) {
+    JsonElement e = obj.get(name);
+    return e == null || e.isJsonNull() ? 0 : e.getAsLong();
+  }
+
+  private static float getFloat(JsonObject obj, String name) {
+    JsonElement e = obj.get(name);
+    return e == null || e.isJsonNull() ? 0 : e.getAsFloat();
+  }
+
+  private static RestApiException toRestApiException(Throwable cause) {
+    if (cause instanceof RestApiException) {
+      return (RestApiException) cause;
+    }
+    return new RestApiException(cause);
+  }
+}
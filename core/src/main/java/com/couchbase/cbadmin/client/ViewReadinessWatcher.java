@@ -0,0 +1,170 @@
+package com.couchbase.cbadmin.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waits until all views of a design document respond to queries.
+ * <p>
+ * Every view is probed independently with a {@code limit=1} query. A view
+ * which is not ready yet (the server answers 404 or 500) is probed again
+ * after an exponentially growing, jittered delay. Probes use
+ * {@code stale=update_after} by default, so they never wait for a
+ * synchronous index build.
+ */
+public class ViewReadinessWatcher {
+  private static final Logger logger = LoggerFactory.getLogger(ViewReadinessWatcher.class);
+
+  private final CouchbaseAdmin client;
+  private final ScheduledExecutorService scheduler;
+  private long initialDelay = 50;
+  private long maxDelay = 2000;
+  private String stale = "update_after";
+
+  public ViewReadinessWatcher(CouchbaseAdmin client) {
+    this(client, Executors.newScheduledThreadPool(4, new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "view-readiness-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    }));
+  }
+
+  public ViewReadinessWatcher(CouchbaseAdmin client, ScheduledExecutorService scheduler) {
+    this.client = client;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Sets the delay before the second probe of a view. Each further probe
+   * doubles the delay up to {@link #setMaxDelay(long)}.
+   * @param initialDelay delay in millis
+   */
+  public void setInitialDelay(long initialDelay) {
+    this.initialDelay = initialDelay;
+  }
+
+  /**
+   * @param maxDelay The maximal delay between two probes of a view, in millis
+   */
+  public void setMaxDelay(long maxDelay) {
+    this.maxDelay = maxDelay;
+  }
+
+  /**
+   * Sets the {@code stale} parameter of the probe queries.
+   * @param stale one of {@code ok}, {@code update_after} or {@code false}
+   */
+  public void setStale(String stale) {
+    this.stale = stale;
+  }
+
+  /**
+   * Starts watching all views of the configuration.
+   *
+   * @param config The design document to watch
+   * @param timeout time to wait until all views become ready, in millis
+   * @return a future completed when all views respond, or completed
+   * exceptionally with a {@link RestApiException} on timeout or failure
+   */
+  public CompletableFuture<Void> watch(ViewConfig config, long timeout) {
+    Collection<String> vNames = config.getViewNames();
+    if (vNames == null || vNames.isEmpty()) {
+      throw new IllegalArgumentException("No views defined");
+    }
+
+    List<CompletableFuture<Void>> probes = new ArrayList<CompletableFuture<Void>>();
+    for (String vName : vNames) {
+      Probe probe = new Probe(String.format("/couchBase/%s/_design/%s/_view/%s?limit=1&stale=%s",
+              config.getBucketName(), config.getDesign(), vName, stale));
+      scheduler.execute(probe);
+      probes.add(probe.ready);
+    }
+
+    final CompletableFuture<Void> all = CompletableFuture.allOf(
+            probes.toArray(new CompletableFuture<?>[probes.size()]));
+    final ScheduledFuture<?> timer = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        all.completeExceptionally(new RestApiException("Timed out waiting for view"));
+      }
+    }, timeout, TimeUnit.MILLISECONDS);
+
+    for (final CompletableFuture<Void> probe : probes) {
+      // fail fast, and stop probing the remaining views once the outcome is known
+      probe.whenComplete((ignored, error) -> {
+        if (error != null) {
+          all.completeExceptionally(error);
+        }
+      });
+      all.whenComplete((ignored, error) -> probe.cancel(false));
+    }
+    all.whenComplete((ignored, error) -> timer.cancel(false));
+    return all;
+  }
+
+  /**
+   * Shuts down the scheduler. Pending watches never complete.
+   */
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private class Probe implements Runnable {
+    private final String uri;
+    private final CompletableFuture<Void> ready = new CompletableFuture<Void>();
+    private int attempt = 0;
+
+    Probe(String uri) {
+      this.uri = uri;
+    }
+
+    @Override
+    public void run() {
+      if (ready.isDone()) {
+        return;
+      }
+      try {
+        client.getJson(uri);
+        ready.complete(null);
+        return;
+      } catch (IOException ex) {
+        ready.completeExceptionally(new RestApiException(ex));
+        return;
+      } catch (RestApiException ex) {
+        int statusCode = ex.getStatusLine().getStatusCode();
+        if (statusCode != 500 && statusCode != 404) {
+          ready.completeExceptionally(ex);
+          return;
+        }
+        logger.trace("While waiting for view", ex);
+      } catch (RuntimeException ex) {
+        ready.completeExceptionally(ex);
+        return;
+      }
+
+      try {
+        scheduler.schedule(this, nextDelay(), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ex) {
+        ready.completeExceptionally(ex);
+      }
+    }
+
+    private long nextDelay() {
+      long delay = Math.min(maxDelay, initialDelay << Math.min(attempt++, 20));
+      // full jitter between half and the whole delay
+      return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+  }
+}
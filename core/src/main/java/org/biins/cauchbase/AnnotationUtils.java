@@ -0,0 +1,98 @@
+package org.biins.cauchbase;
+
+import org.biins.cauchbase.metadata.BucketMetadata;
+import org.biins.cauchbase.metadata.ClassMetadata;
+import org.biins.cauchbase.metadata.ViewMetadata;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * @author Martin Janys
+ */
+public class AnnotationUtils {
+
+    /**
+     * Reflective metadata computed once per class and shared by all {@link AutoViews} instances.
+     * Entries go away together with their class loader.
+     */
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return readMetadata(type);
+        }
+    };
+
+    /**
+     * Reads the {@link Bucket} and {@link View} annotations of the class and its public methods.
+     *
+     * @throws IllegalStateException if the class doesn't declare exactly one bucket
+     */
+    public static ClassMetadata metadataOf(Class<?> cls) {
+        return METADATA.get(cls);
+    }
+
+    private static ClassMetadata readMetadata(Class<?> cls) {
+        Bucket bucket = cls.getAnnotation(Bucket.class);
+        if (bucket == null) {
+            throw new IllegalStateException("One bucket must be defined");
+        }
+
+        List<ViewMetadata> views = new ArrayList<>();
+        addViews(cls.getAnnotation(View.class), views);
+        for (Method method : cls.getMethods()) {
+            if (method.getDeclaringClass() != Object.class) {
+                addViews(method.getAnnotation(View.class), views);
+            }
+        }
+        return new ClassMetadata(cls.getName(), BucketMetadata.from(bucket), views);
+    }
+
+    private static void addViews(View view, List<ViewMetadata> views) {
+        if (view != null) {
+            views.add(ViewMetadata.from(view));
+        }
+    }
+
+    public static Map<Class<?>, List<Annotation>> annotationsByTypes(Annotation ... annotations) {
+        if (annotations.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<Class<?>, List<Annotation>> annotationMap = new HashMap<Class<?>, List<Annotation>>();
+        for (Annotation annotation : annotations) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            List<Annotation> annotationList = annotationMap.get(type);
+            if (annotationList == null) {
+                annotationList = new ArrayList<>(1);
+                annotationMap.put(type, annotationList);
+            }
+            annotationList.add(annotation);
+        }
+        return annotationMap;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> annotationsByType(Class<T> type, Annotation ... annotations) {
+        List<T> annotationList = null;
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType() == type) {
+                if (annotationList == null) {
+                    annotationList = new ArrayList<>(1);
+                }
+                annotationList.add((T) annotation);
+            }
+        }
+        return annotationList != null ? annotationList : Collections.<T>emptyList();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> get(Map<Class<?>, List<Annotation>> annotationMap, Class<T> type) {
+        if (annotationMap.containsKey(type)) {
+            return (List<T>) annotationMap.get(type);
+        }
+        else {
+            return Collections.emptyList();
+        }
+    }
+}
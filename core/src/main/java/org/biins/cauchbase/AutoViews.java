@@ -0,0 +1,823 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.client.*;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.biins.cauchbase.builder.BucketHelper;
+import org.biins.cauchbase.builder.ViewConfigHelper;
+import org.biins.cauchbase.lock.ProvisioningLock;
+import org.biins.cauchbase.metadata.BucketMetadata;
+import org.biins.cauchbase.metadata.ClassMetadata;
+import org.biins.cauchbase.metadata.ViewManifest;
+import org.biins.cauchbase.metadata.ViewMetadata;
+import org.biins.cauchbase.scanner.ClassPathScanner;
+import org.biins.cauchbase.state.ProvisioningState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.biins.cauchbase.AnnotationUtils.metadataOf;
+
+/**
+ * @author Martin Janys
+ */
+public class AutoViews {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutoViews.class);
+
+    private final CouchbaseAdmin client;
+
+    private Map<String, String> bucketPasswords = Collections.emptyMap();
+    private long pollTimeout = -1;
+    private boolean developmentViews = false;
+
+    private int parallelism = 4;
+    private boolean useManifest = true;
+    private boolean prune = false;
+    private StagedRollout stagedRollout;
+    private ViewManifest manifest;
+    private ProvisioningState provisioningState;
+    private ProvisioningLock provisioningLock;
+    private long lockTimeout = 30 * 60 * 1000;
+    private long lockPollInterval = 1000;
+    private volatile boolean clusterIdRead;
+    private volatile String clusterId;
+
+    private final Registry registry = new Registry();
+
+    public AutoViews(CouchbaseAdmin client) {
+        this.client = client;
+    }
+
+    public void setBucketPasswords(Map<String, String> bucketPasswords) {
+        this.bucketPasswords = bucketPasswords;
+    }
+
+    public void setPollTimeout(long pollTimeout) {
+        this.pollTimeout = pollTimeout;
+    }
+
+    public void setDevelopmentViews(boolean developmentViews) {
+        this.developmentViews = developmentViews;
+    }
+
+    public boolean isDevelopmentViews() {
+        return developmentViews;
+    }
+
+    /**
+     * Maximal number of buckets provisioned concurrently by {@link #setupAll(Collection)}.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Whether to use the {@link ViewManifest} generated at build time. Classes missing from the manifest are
+     * always read reflectively.
+     */
+    public void setUseManifest(boolean useManifest) {
+        this.useManifest = useManifest;
+    }
+
+    /**
+     * Whether {@link #plan() plans} delete views which are on the server but not declared by any class.
+     */
+    public void setPrune(boolean prune) {
+        this.prune = prune;
+    }
+
+    /**
+     * Whether changed production design documents are rolled out through a shadow design document, so queries
+     * keep using the old index until the new one is built. Ignored for development views.
+     *
+     * @see StagedRollout
+     */
+    public void setStagedRollout(boolean stagedRollout) {
+        this.stagedRollout = stagedRollout ? new StagedRollout(client) : null;
+    }
+
+    /**
+     * Maximal time to wait for the index of a staged design document, in millis.
+     */
+    public void setStagedRolloutTimeout(long timeout) {
+        if (stagedRollout == null) {
+            stagedRollout = new StagedRollout(client);
+        }
+        stagedRollout.setTimeout(timeout);
+    }
+
+    /**
+     * Records provisioned design documents in the state, per cluster. {@link #setup(Class)},
+     * {@link #setupAll(Collection)} and {@link #commit()} skip design documents recorded with the same views
+     * and bucket settings, so a restart without changes sends a single {@code /pools} request.
+     * <p>
+     * Changes made to the cluster by others are not noticed, {@link ProvisioningState#clear()} forgets
+     * the recorded state.
+     */
+    public void setProvisioningState(ProvisioningState provisioningState) {
+        this.provisioningState = provisioningState;
+    }
+
+    /**
+     * Lets only the instance holding the lease of a design document write it, when several instances start
+     * against one cluster. The others poll the design document until it matches their views, e.g. until the
+     * holder promoted a staged rollout, and take over the lease if the holder ends without writing it.
+     * A lease {@link ProvisioningLock.Lease#isValid() lost} before writing is given up and acquired again.
+     *
+     * @see org.biins.cauchbase.lock.CouchbaseProvisioningLock
+     * @see org.biins.cauchbase.lock.FileProvisioningLock
+     */
+    public void setProvisioningLock(ProvisioningLock provisioningLock) {
+        this.provisioningLock = provisioningLock;
+    }
+
+    /**
+     * Maximal time to wait for a design document written by another instance, in millis.
+     */
+    public void setLockTimeout(long lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    public void setLockPollInterval(long lockPollInterval) {
+        this.lockPollInterval = lockPollInterval;
+    }
+
+    public void setup(Object object) {
+        Class<?> cls = object.getClass();
+        setup(cls);
+    }
+
+    public void setup(Class<?> cls) {
+        ClassMetadata metadata = readViews(cls);
+        BucketMetadata rootBucket = metadata.getBucket();
+        if (isProvisioned(rootBucket, rootBucket.getDesign(), metadata.getViews())) {
+            return;
+        }
+
+        createMissingBuckets(Collections.singletonList(rootBucket));
+        defineViews(metadata.getViews(), rootBucket, rootBucket.getDesign());
+        markProvisioned(rootBucket, rootBucket.getDesign(), metadata.getViews());
+    }
+
+    /**
+     * Sets up views of all classes asynchronously. Buckets are created and their design documents defined
+     * concurrently, at most {@link #setParallelism(int) parallelism} buckets at a time. Classes are read
+     * on the caller's thread.
+     *
+     * @return future completed with the results by bucket name, or exceptionally with the first failure
+     */
+    public CompletableFuture<Map<String, BucketSetupResult>> setupAll(Collection<Class<?>> classes) {
+        final Registry setup = new Registry();
+        for (Class<?> cls : classes) {
+            setup.add(cls);
+        }
+        if (setup.buckets.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.<String, BucketSetupResult>emptyMap());
+        }
+
+        final Map<BucketMetadata, Map<String, Map<String, ViewMetadata>>> pending = new LinkedHashMap<>();
+        for (BucketMetadata bucket : setup.buckets.values()) {
+            Map<String, Map<String, ViewMetadata>> designs = unprovisioned(bucket, setup.designsOf(bucket));
+            if (!designs.isEmpty()) {
+                pending.put(bucket, designs);
+            }
+        }
+
+        final ExecutorService executor = newExecutor(pending.size());
+
+        CompletableFuture<Set<String>> existing = pending.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.<String>emptySet())
+                : CompletableFuture.supplyAsync(() -> getBucketNames(), executor);
+        final Map<String, CompletableFuture<BucketSetupResult>> futures = new LinkedHashMap<>();
+        for (final BucketMetadata bucket : setup.buckets.values()) {
+            final Map<String, Map<String, ViewMetadata>> designs = pending.get(bucket);
+            futures.put(bucket.getName(), designs == null
+                    ? CompletableFuture.completedFuture(new BucketSetupResult(bucket.getName(), false, Collections.<DesignDocDiff>emptyList()))
+                    : existing.thenApplyAsync(names -> setupBucket(bucket, designs, names), executor));
+        }
+
+        CompletableFuture<Map<String, BucketSetupResult>> result = CompletableFuture
+                .allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(ignored -> {
+                    Map<String, BucketSetupResult> results = new LinkedHashMap<>();
+                    for (Map.Entry<String, CompletableFuture<BucketSetupResult>> entry : futures.entrySet()) {
+                        results.put(entry.getKey(), entry.getValue().join());
+                    }
+                    return results;
+                });
+        result.whenComplete((results, error) -> executor.shutdown());
+        return result;
+    }
+
+    private ExecutorService newExecutor(int tasks) {
+        return Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, tasks)), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "auto-views-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private BucketSetupResult setupBucket(BucketMetadata bucket, Map<String, Map<String, ViewMetadata>> designs, Set<String> existing) {
+        boolean created = false;
+        if (!existing.contains(bucket.getName())) {
+            try {
+                client.createBucket(createBucketConfig(bucket));
+            }
+            catch (RestApiException e) {
+                throw new RuntimeException(e);
+            }
+            created = true;
+        }
+        List<DesignDocDiff> diffs = new ArrayList<>();
+        for (Map.Entry<String, Map<String, ViewMetadata>> design : designs.entrySet()) {
+            DesignDocDiff diff = defineViews(design.getValue().values(), bucket, design.getKey());
+            if (diff != null) {
+                diffs.add(diff);
+            }
+            markProvisioned(bucket, design.getKey(), design.getValue().values());
+        }
+        return new BucketSetupResult(bucket.getName(), created, diffs);
+    }
+
+    /**
+     * Registers views of the object's class. Nothing is sent to the cluster until {@link #commit()} is called.
+     */
+    public void register(Object object) {
+        register(object.getClass());
+    }
+
+    /**
+     * Registers views of the class. Nothing is sent to the cluster until {@link #commit()} is called.
+     *
+     * @throws IllegalStateException if the class defines an already registered bucket or view differently
+     */
+    public synchronized void register(Class<?> cls) {
+        registry.add(cls);
+    }
+
+    /**
+     * Registers views of all {@code @Bucket} classes found in the packages. The classes are discovered from
+     * their class files and read from the {@link ViewManifest} when present, so they are not initialized
+     * and no beans are created. Nothing is sent to the cluster until {@link #commit()} is called.
+     *
+     * @return names of the registered classes
+     */
+    public Set<String> registerPackages(ClassPathScanner scanner, String ... packages) {
+        Set<String> classNames;
+        try {
+            classNames = scanner.scan(packages);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Can't scan packages " + Arrays.toString(packages), e);
+        }
+        synchronized (this) {
+            for (String className : classNames) {
+                registry.add(readViews(className, scanner.getClassLoader()));
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Scans the packages with the context class loader and provisions all found buckets and views in one pass.
+     * Suitable for a pre-start hook or an init container, independent of bean creation order.
+     *
+     * @return the changes of the design documents
+     */
+    public synchronized List<DesignDocDiff> setupPackages(String ... packages) {
+        registerPackages(new ClassPathScanner(), packages);
+        return commit();
+    }
+
+    /**
+     * Creates all registered buckets with a single bucket listing and defines one merged design document
+     * per bucket and design.
+     *
+     * @return the changes of the design documents
+     */
+    public synchronized List<DesignDocDiff> commit() {
+        Map<String, BucketMetadata> buckets = new LinkedHashMap<>();
+        Map<DesignKey, Map<String, ViewMetadata>> pending = new LinkedHashMap<>();
+        for (Map.Entry<DesignKey, Map<String, ViewMetadata>> entry : registry.views.entrySet()) {
+            BucketMetadata rootBucket = registry.buckets.get(entry.getKey().bucket);
+            if (!isProvisioned(rootBucket, entry.getKey().design, entry.getValue().values())) {
+                buckets.put(rootBucket.getName(), rootBucket);
+                pending.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        List<DesignDocDiff> diffs = new ArrayList<>();
+        createMissingBuckets(buckets.values());
+        for (Map.Entry<DesignKey, Map<String, ViewMetadata>> entry : pending.entrySet()) {
+            BucketMetadata rootBucket = buckets.get(entry.getKey().bucket);
+            DesignDocDiff diff = defineViews(entry.getValue().values(), rootBucket, entry.getKey().design);
+            if (diff != null) {
+                diffs.add(diff);
+            }
+            markProvisioned(rootBucket, entry.getKey().design, entry.getValue().values());
+        }
+        registry.clear();
+        return diffs;
+    }
+
+    /**
+     * Computes the changes needed for the registered classes without modifying the cluster. Design documents
+     * are fetched concurrently, at most {@link #setParallelism(int) parallelism} at a time.
+     */
+    public synchronized DeploymentPlan plan() {
+        return plan(registry);
+    }
+
+    /**
+     * Computes the changes needed for the classes without modifying the cluster.
+     *
+     * @see #plan()
+     */
+    public DeploymentPlan plan(Collection<Class<?>> classes) {
+        Registry target = new Registry();
+        for (Class<?> cls : classes) {
+            target.add(cls);
+        }
+        return plan(target);
+    }
+
+    private DeploymentPlan plan(Registry target) {
+        Set<String> existing = getBucketNames();
+        List<BucketMetadata> bucketsToCreate = new ArrayList<>();
+        for (BucketMetadata bucket : target.buckets.values()) {
+            if (!existing.contains(bucket.getName())) {
+                bucketsToCreate.add(bucket);
+            }
+        }
+        if (target.views.isEmpty()) {
+            return new DeploymentPlan(prune, bucketsToCreate, Collections.<DeploymentPlan.DesignChange>emptyList());
+        }
+
+        ExecutorService executor = newExecutor(target.views.size());
+        try {
+            List<CompletableFuture<DeploymentPlan.DesignChange>> futures = new ArrayList<>();
+            for (Map.Entry<DesignKey, Map<String, ViewMetadata>> entry : target.views.entrySet()) {
+                final BucketMetadata bucket = target.buckets.get(entry.getKey().bucket);
+                final ViewConfig config = buildViewConfig(entry.getValue().values(), bucket, entry.getKey().design);
+                final boolean bucketExists = existing.contains(bucket.getName());
+                futures.add(CompletableFuture.supplyAsync(() -> planDesign(config, bucketExists), executor));
+            }
+
+            List<DeploymentPlan.DesignChange> designs = new ArrayList<>(futures.size());
+            for (CompletableFuture<DeploymentPlan.DesignChange> future : futures) {
+                designs.add(future.join());
+            }
+            return new DeploymentPlan(prune, bucketsToCreate, designs);
+        }
+        catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private DeploymentPlan.DesignChange planDesign(ViewConfig config, boolean bucketExists) {
+        JsonObject current;
+        try {
+            current = bucketExists ? client.getDesignDocument(config.getBucketName(), config.getDesign()) : null;
+        }
+        catch (RestApiException e) {
+            throw new RuntimeException(e);
+        }
+        DesignDocDiff diff = DesignDocDiff.compute(config, current, prune);
+        JsonObject document = prune
+                ? DesignDocDiff.replace(current, config.getDefinition())
+                : DesignDocDiff.merge(current, config.getDefinition());
+        return new DeploymentPlan.DesignChange(diff, current != null, document);
+    }
+
+    /**
+     * Creates the missing buckets and writes the design documents of the plan which have changes. Unchanged
+     * design documents are not touched. A design document, merged or pruned, is written only over the revision it
+     * was planned against, applying a plan outdated by another client fails with a conflict.
+     *
+     * @return the changes of the written design documents
+     */
+    public List<DesignDocDiff> apply(DeploymentPlan plan) {
+        createMissingBuckets(plan.getBucketsToCreate());
+
+        List<DesignDocDiff> applied = new ArrayList<>();
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        try {
+            for (DeploymentPlan.DesignChange design : plan.getRebuilt()) {
+                JsonObject document = design.getDocument();
+                if (isStaged()) {
+                    stagedRollout.promote(design.getBucketName(), design.getDesign(), document, design.isExists());
+                }
+                else {
+                    client.putDesignDocument(design.getBucketName(), design.getDesign(), document);
+                }
+                applied.add(design.getDiff());
+                if (pollTimeout > 0) {
+                    ready.add(client.awaitViews(viewConfigOf(design.getBucketName(), design.getDesign(), document), pollTimeout));
+                }
+            }
+            CompletableFuture.allOf(ready.toArray(new CompletableFuture<?>[ready.size()])).join();
+        }
+        catch (RestApiException e) {
+            throw new RuntimeException(e);
+        }
+        catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+        return applied;
+    }
+
+    private ViewConfig viewConfigOf(String bucketName, String design, JsonObject document) {
+        ViewConfigBuilder builder = new ViewConfigBuilder(design, bucketName);
+        builder.password(bucketPasswords.get(bucketName));
+        for (Map.Entry<String, JsonElement> view : document.getAsJsonObject("views").entrySet()) {
+            JsonObject definition = view.getValue().getAsJsonObject();
+            builder.view(view.getKey(), definition.get("map").getAsString(),
+                    definition.has("reduce") ? definition.get("reduce").getAsString() : null);
+        }
+        return builder.build();
+    }
+
+    private ClassMetadata readViews(Class<?> cls) {
+        if (useManifest) {
+            ClassMetadata metadata = getManifest().get(cls.getName());
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+        return metadataOf(cls);
+    }
+
+    private ClassMetadata readViews(String className, ClassLoader classLoader) {
+        if (useManifest) {
+            ClassMetadata metadata = getManifest().get(className);
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+        try {
+            return readViews(Class.forName(className, false, classLoader));
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Can't read views of " + className, e);
+        }
+    }
+
+    private synchronized ViewManifest getManifest() {
+        if (manifest == null) {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            manifest = ViewManifest.cached(classLoader != null ? classLoader : AutoViews.class.getClassLoader());
+        }
+        return manifest;
+    }
+
+    private static List<ViewMetadata> toMetadata(List<View> views) {
+        List<ViewMetadata> metadata = new ArrayList<>(views.size());
+        for (View view : views) {
+            metadata.add(ViewMetadata.from(view));
+        }
+        return metadata;
+    }
+
+    private BucketConfig createBucketConfig(BucketMetadata bucket) {
+        return BucketHelper.build(bucket, bucketPasswords.get(bucket.getName()));
+    }
+
+    private String resolveDesignName(String design) {
+        return developmentViews ? "dev_" + design : design;
+    }
+
+    public void createBucket(Bucket bucket) {
+        createBuckets(Collections.singletonList(bucket));
+    }
+
+    public void createBuckets(Collection<Bucket> buckets) {
+        List<BucketMetadata> metadata = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            metadata.add(BucketMetadata.from(bucket));
+        }
+        createMissingBuckets(metadata);
+    }
+
+    private void createMissingBuckets(Collection<BucketMetadata> buckets) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> existing = getBucketNames();
+            for (BucketMetadata bucket : buckets) {
+                BucketConfig bucketConfig = createBucketConfig(bucket);
+                if (!existing.contains(bucketConfig.name)) {
+                    client.createBucket(bucketConfig);
+                }
+            }
+        }
+        catch (RestApiException e) {
+            throw new RuntimeException(e);
+        }
+
+    }
+
+    private Set<String> getBucketNames() {
+        try {
+            return client.getBuckets().keySet();
+        }
+        catch (RestApiException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public DesignDocDiff createViews(List<View> views, Bucket rootBucket) {
+        return defineViews(toMetadata(views), BucketMetadata.from(rootBucket), rootBucket.design());
+    }
+
+    private DesignDocDiff defineViews(Collection<ViewMetadata> views, BucketMetadata rootBucket, String design) {
+        ViewConfig config = buildViewConfig(views, rootBucket, design);
+        try {
+            if (config == null) {
+                return null;
+            }
+            return provisioningLock != null ? defineLeased(config) : define(config);
+        }
+        catch (RestApiException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private DesignDocDiff define(ViewConfig config) throws RestApiException {
+        return isStaged() ? stagedRollout.define(config) : client.defineView(config, pollTimeout);
+    }
+
+    /**
+     * Defines the views under the lease of the design document, or waits until its holder defined them.
+     */
+    private DesignDocDiff defineLeased(ViewConfig config) throws RestApiException {
+        String resource = config.getBucketName() + "/" + config.getDesign();
+        long deadline = System.currentTimeMillis() + lockTimeout;
+        boolean waiting = false;
+        while (true) {
+            DesignDocDiff diff = DesignDocDiff.compute(config, client.getDesignDocument(config.getBucketName(), config.getDesign()));
+            if (!diff.hasChanges()) {
+                if (waiting) {
+                    logger.info("Design document {} defined by another instance", resource);
+                }
+                return diff;
+            }
+
+            ProvisioningLock.Lease lease;
+            try {
+                lease = provisioningLock.tryAcquire(resource);
+            }
+            catch (IOException e) {
+                throw new RestApiException(e);
+            }
+            if (lease != null) {
+                try {
+                    if (lease.isValid()) {
+                        DesignDocDiff defined = define(config);
+                        if (!lease.isValid()) {
+                            logger.warn("Lease of {} lost while defining it, another instance may have written it too", resource);
+                        }
+                        return defined;
+                    }
+                    logger.warn("Lease of {} lost before defining it", resource);
+                }
+                finally {
+                    try {
+                        lease.close();
+                    }
+                    catch (IOException e) {
+                        logger.warn("Can't release lease of {}", resource, e);
+                    }
+                }
+            }
+
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("Design document " + resource + " not defined by another instance in " + lockTimeout + " ms");
+            }
+            if (!waiting) {
+                logger.info("Waiting for design document {} defined by another instance", resource);
+                waiting = true;
+            }
+            try {
+                Thread.sleep(lockPollInterval);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RestApiException(e);
+            }
+        }
+    }
+
+    private Map<String, Map<String, ViewMetadata>> unprovisioned(BucketMetadata bucket, Map<String, Map<String, ViewMetadata>> designs) {
+        Map<String, Map<String, ViewMetadata>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, ViewMetadata>> design : designs.entrySet()) {
+            if (!isProvisioned(bucket, design.getKey(), design.getValue().values())) {
+                pending.put(design.getKey(), design.getValue());
+            }
+        }
+        return pending;
+    }
+
+    private boolean isProvisioned(BucketMetadata bucket, String design, Collection<ViewMetadata> views) {
+        String clusterId = provisioningState != null ? getClusterId() : null;
+        return clusterId != null
+                && provisioningState.isRecorded(clusterId, provisioningKey(bucket, design), provisioningHash(bucket, views));
+    }
+
+    private void markProvisioned(BucketMetadata bucket, String design, Collection<ViewMetadata> views) {
+        String clusterId = provisioningState != null ? getClusterId() : null;
+        if (clusterId == null) {
+            return;
+        }
+        try {
+            provisioningState.record(clusterId, provisioningKey(bucket, design), provisioningHash(bucket, views));
+        }
+        catch (IOException e) {
+            logger.warn("Can't record provisioning of {}/{} in {}", bucket.getName(), design, provisioningState.getFile(), e);
+        }
+    }
+
+    private String provisioningKey(BucketMetadata bucket, String design) {
+        return bucket.getName() + "/" + resolveDesignName(design);
+    }
+
+    /**
+     * Hash of the bucket settings and the views, independent of the order the views were read in.
+     */
+    private static String provisioningHash(BucketMetadata bucket, Collection<ViewMetadata> views) {
+        List<String> viewHashes = new ArrayList<>(views.size());
+        for (ViewMetadata view : views) {
+            viewHashes.add(view.getName() + '=' + view.getHash());
+        }
+        Collections.sort(viewHashes);
+
+        StringBuilder sb = new StringBuilder()
+                .append(bucket.getType()).append(',')
+                .append(bucket.getRamQuotaMB()).append(',')
+                .append(bucket.getReplicaCount()).append(',')
+                .append(bucket.isShouldIndexReplicas());
+        for (String viewHash : viewHashes) {
+            sb.append('\n').append(viewHash);
+        }
+        return Hex.encodeHexString(DigestUtils.sha(sb.toString()));
+    }
+
+    /**
+     * @return identifier of the cluster from one {@code /pools} request, null if the cluster is not initialized
+     */
+    private String getClusterId() {
+        if (!clusterIdRead) {
+            synchronized (this) {
+                if (!clusterIdRead) {
+                    try {
+                        clusterId = client.getInfo().getClusterIdentifier();
+                    }
+                    catch (RestApiException e) {
+                        throw new RuntimeException(e);
+                    }
+                    clusterIdRead = true;
+                }
+            }
+        }
+        return clusterId;
+    }
+
+    private boolean isStaged() {
+        return stagedRollout != null && !developmentViews;
+    }
+
+    private ViewConfig buildViewConfig(Collection<ViewMetadata> views, BucketMetadata rootBucket, String design) {
+        ViewConfigBuilder builder = null;
+        for (ViewMetadata view : views) {
+            if (builder == null) {
+                builder = ViewConfigHelper.create(resolveDesignName(design), rootBucket.getName(), bucketPasswords.get(rootBucket.getName()));
+            }
+
+            ViewConfigHelper.addView(builder, view);
+        }
+        return builder != null ? builder.build() : null;
+    }
+
+    /**
+     * Views of registered classes grouped by bucket and design.
+     */
+    private final class Registry {
+        private final Map<String, BucketMetadata> buckets = new LinkedHashMap<>();
+        private final Map<DesignKey, Map<String, ViewMetadata>> views = new LinkedHashMap<>();
+
+        private void add(Class<?> cls) {
+            add(readViews(cls));
+        }
+
+        /**
+         * Checks the bucket settings and all views of the class before registering any of them, a rejected class
+         * leaves the registry unchanged.
+         */
+        private void add(ClassMetadata metadata) {
+            BucketMetadata rootBucket = metadata.getBucket();
+            BucketMetadata registeredBucket = buckets.get(rootBucket.getName());
+            if (registeredBucket != null && !sameSettings(registeredBucket, rootBucket)) {
+                throw new IllegalStateException("Bucket " + rootBucket.getName() + " is defined differently by " + metadata.getClassName());
+            }
+
+            DesignKey key = new DesignKey(rootBucket.getName(), rootBucket.getDesign());
+            Map<String, ViewMetadata> designViews = views.get(key);
+            Map<String, ViewMetadata> added = new LinkedHashMap<>();
+            for (ViewMetadata view : metadata.getViews()) {
+                ViewMetadata registered = added.get(view.getName());
+                if (registered == null && designViews != null) {
+                    registered = designViews.get(view.getName());
+                }
+                if (registered != null && !Objects.equals(registered.getHash(), view.getHash())) {
+                    throw new IllegalStateException("View " + view.getName() + " of design " + key + " is defined differently by " + metadata.getClassName());
+                }
+                added.put(view.getName(), view);
+            }
+
+            if (registeredBucket == null) {
+                buckets.put(rootBucket.getName(), rootBucket);
+            }
+            if (designViews == null) {
+                designViews = new LinkedHashMap<>();
+                views.put(key, designViews);
+            }
+            designViews.putAll(added);
+        }
+
+        private boolean sameSettings(BucketMetadata a, BucketMetadata b) {
+            return a.getType() == b.getType()
+                    && a.getRamQuotaMB() == b.getRamQuotaMB()
+                    && a.getReplicaCount() == b.getReplicaCount()
+                    && a.isShouldIndexReplicas() == b.isShouldIndexReplicas();
+        }
+
+        private Map<String, Map<String, ViewMetadata>> designsOf(BucketMetadata bucket) {
+            Map<String, Map<String, ViewMetadata>> designs = new LinkedHashMap<>();
+            for (Map.Entry<DesignKey, Map<String, ViewMetadata>> entry : views.entrySet()) {
+                if (entry.getKey().bucket.equals(bucket.getName())) {
+                    designs.put(entry.getKey().design, entry.getValue());
+                }
+            }
+            return designs;
+        }
+
+        private void clear() {
+            buckets.clear();
+            views.clear();
+        }
+    }
+
+    private static final class DesignKey {
+        private final String bucket;
+        private final String design;
+
+        private DesignKey(String bucket, String design) {
+            this.bucket = bucket;
+            this.design = design;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DesignKey)) {
+                return false;
+            }
+            DesignKey other = (DesignKey) o;
+            return bucket.equals(other.bucket) && design.equals(other.design);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * bucket.hashCode() + design.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return bucket + "/" + design;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.client.DesignDocDiff;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of setting up one bucket by {@link AutoViews#setupAll(java.util.Collection)}.
+ */
+public class BucketSetupResult {
+
+    private final String bucketName;
+    private final boolean created;
+    private final List<DesignDocDiff> designs;
+
+    public BucketSetupResult(String bucketName, boolean created, List<DesignDocDiff> designs) {
+        this.bucketName = bucketName;
+        this.created = created;
+        this.designs = Collections.unmodifiableList(designs);
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    /**
+     * @return true if the bucket did not exist and was created
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    public List<DesignDocDiff> getDesigns() {
+        return designs;
+    }
+
+    @Override
+    public String toString() {
+        return "BucketSetupResult{" +
+                "bucketName='" + bucketName + '\'' +
+                ", created=" + created +
+                ", designs=" + designs +
+                '}';
+    }
+}
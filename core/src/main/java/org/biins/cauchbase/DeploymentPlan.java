@@ -0,0 +1,141 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.client.DesignDocDiff;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.biins.cauchbase.metadata.BucketMetadata;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes needed to bring the cluster to the registered buckets and views, computed by
+ * {@link AutoViews#plan()} and executed by {@link AutoViews#apply(DeploymentPlan)}.
+ * <p>
+ * Computing a plan only reads bucket listing and design documents, it never rebuilds an index.
+ * The plan is {@link Serializable} and can be stored as JSON, e.g. to show in CI which design
+ * documents a deploy will rebuild and apply it later.
+ */
+public class DeploymentPlan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private final boolean prune;
+    private final List<BucketMetadata> bucketsToCreate;
+    private final List<DesignChange> designs;
+
+    DeploymentPlan(boolean prune, List<BucketMetadata> bucketsToCreate, List<DesignChange> designs) {
+        this.prune = prune;
+        this.bucketsToCreate = new ArrayList<>(bucketsToCreate);
+        this.designs = new ArrayList<>(designs);
+    }
+
+    public static DeploymentPlan fromJson(String json) {
+        return GSON.fromJson(json, DeploymentPlan.class);
+    }
+
+    public String toJson() {
+        return GSON.toJson(this);
+    }
+
+    /**
+     * @return true if views present only on the server are deleted
+     */
+    public boolean isPrune() {
+        return prune;
+    }
+
+    public List<BucketMetadata> getBucketsToCreate() {
+        return Collections.unmodifiableList(bucketsToCreate);
+    }
+
+    public List<DesignChange> getDesigns() {
+        return Collections.unmodifiableList(designs);
+    }
+
+    /**
+     * @return design documents which will be written and their indexes rebuilt
+     */
+    public List<DesignChange> getRebuilt() {
+        List<DesignChange> rebuilt = new ArrayList<>();
+        for (DesignChange design : designs) {
+            if (design.isRebuilt()) {
+                rebuilt.add(design);
+            }
+        }
+        return rebuilt;
+    }
+
+    public boolean hasChanges() {
+        return !bucketsToCreate.isEmpty() || !getRebuilt().isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DeploymentPlan");
+        for (BucketMetadata bucket : bucketsToCreate) {
+            sb.append("\n  create bucket ").append(bucket.getName());
+        }
+        for (DesignChange design : designs) {
+            sb.append("\n  ").append(design.isRebuilt() ? "rebuild " : "keep ").append(design.getDiff());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Planned change of one design document.
+     */
+    public static class DesignChange implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final DesignDocDiff diff;
+        private final boolean exists;
+        private final String document;
+
+        DesignChange(DesignDocDiff diff, boolean exists, JsonObject document) {
+            this.diff = diff;
+            this.exists = exists;
+            this.document = document.toString();
+        }
+
+        public String getBucketName() {
+            return diff.getBucketName();
+        }
+
+        public String getDesign() {
+            return diff.getDesign();
+        }
+
+        public DesignDocDiff getDiff() {
+            return diff;
+        }
+
+        /**
+         * @return true if the design document exists on the server
+         */
+        public boolean isExists() {
+            return exists;
+        }
+
+        /**
+         * @return true if the design document will be written
+         */
+        public boolean isRebuilt() {
+            return diff.hasChanges();
+        }
+
+        /**
+         * @return the complete design document to be written
+         */
+        public JsonObject getDocument() {
+            return new JsonParser().parse(document).getAsJsonObject();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.client.*;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Blue/green rollout of a production design document.
+ * <p>
+ * The new definition is first written to a shadow design document and its index is built while queries keep
+ * using the old one. Once the build finished, the production design document is replaced by the same views.
+ * The server keys view indexes by the signature of their definitions, so the production design document takes
+ * over the built index immediately. The shadow design document {@code <design>__staged} is deleted afterwards,
+ * one left by an interrupted rollout is replaced by the next one. A rollout whose shadow design document was
+ * replaced or deleted by a concurrent rollout of the same design document fails as a conflict and is merged
+ * and rolled out again.
+ * <p>
+ * A new production design document is written directly, there is no index to keep serving.
+ */
+public class StagedRollout {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagedRollout.class);
+
+    public static final String SHADOW_SUFFIX = "__staged";
+
+    private final CouchbaseAdmin client;
+    private final ViewIndexMonitor indexMonitor;
+    private long timeout = 30 * 60 * 1000;
+    private long startTimeout = 10000;
+    private int conflictAttempts = 5;
+
+    public StagedRollout(CouchbaseAdmin client) {
+        this.client = client;
+        this.indexMonitor = new ViewIndexMonitor(client);
+    }
+
+    /**
+     * Maximal time to wait for the index of the shadow design document, in millis.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Maximal time for the index build of the shadow design document to appear in the task listings, in millis.
+     * A build not listed by then is taken as already finished.
+     */
+    public void setStartTimeout(long startTimeout) {
+        this.startTimeout = startTimeout;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        indexMonitor.setPollInterval(pollInterval);
+    }
+
+    /**
+     * Maximal number of rollouts of a design document changed concurrently by another client, including the first.
+     */
+    public void setConflictAttempts(int conflictAttempts) {
+        if (conflictAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is needed");
+        }
+        this.conflictAttempts = conflictAttempts;
+    }
+
+    public static String shadowName(String design) {
+        return design + SHADOW_SUFFIX;
+    }
+
+    /**
+     * Defines the views of the configuration, keeping views present only on the server.
+     *
+     * The production design document is replaced only over the revision the views were merged into. If another
+     * client wrote it during the rollout, the views are merged into the new revision and rolled out again.
+     *
+     * @return the difference between the configuration and the production design document read first
+     */
+    public DesignDocDiff define(ViewConfig config) throws RestApiException {
+        DesignDocDiff first = null;
+        for (int attempt = 1; ; attempt++) {
+            JsonObject current = client.getDesignDocument(config.getBucketName(), config.getDesign());
+            DesignDocDiff diff = DesignDocDiff.compute(config, current);
+            if (first == null) {
+                first = diff;
+            }
+            if (!diff.hasChanges()) {
+                return first;
+            }
+            try {
+                promote(config.getBucketName(), config.getDesign(), DesignDocDiff.merge(current, config.getDefinition()), current != null);
+                return first;
+            }
+            catch (RestApiException e) {
+                if (!e.isConflict() || attempt >= conflictAttempts) {
+                    throw e;
+                }
+            }
+            logger.info("Design document {}/{} changed during the rollout, merging again", config.getBucketName(), config.getDesign());
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(100L * attempt + 1));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RestApiException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the design document through a shadow design document.
+     *
+     * @param exists whether the production design document exists and serves queries
+     */
+    public void promote(String bucketName, String design, JsonObject document, boolean exists) throws RestApiException {
+        if (!exists) {
+            client.putDesignDocument(bucketName, design, document);
+            return;
+        }
+
+        String shadow = shadowName(design);
+        JsonObject shadowDocument = new JsonParser().parse(document.toString()).getAsJsonObject();
+        shadowDocument.addProperty("_id", "_design/" + shadow);
+        // the revision belongs to the production design document
+        shadowDocument.remove(DesignDocDiff.REV);
+
+        logger.info("Building index of {}/{} in {}", bucketName, design, shadow);
+        client.putDesignDocument(bucketName, shadow, shadowDocument);
+        try {
+            awaitIndex(bucketName, shadow, document);
+            JsonObject built = client.getDesignDocument(bucketName, shadow);
+            if (built == null || !Objects.equals(document.get("views"), built.get("views"))) {
+                throw shadowConflict(bucketName, shadow);
+            }
+            client.putDesignDocument(bucketName, design, document);
+            logger.info("Promoted {}/{}", bucketName, design);
+        }
+        finally {
+            try {
+                client.deleteDesignDocument(bucketName, shadow);
+            }
+            catch (RestApiException e) {
+                logger.warn("Can't delete shadow design document {}/{}", bucketName, shadow, e);
+            }
+        }
+    }
+
+    private void awaitIndex(String bucketName, String design, JsonObject document) throws RestApiException {
+        String view = firstView(document);
+        if (view == null) {
+            return;
+        }
+        String query = String.format("/couchBase/%s/_design/%s/_view/%s?limit=1", bucketName, design, view);
+        try {
+            // starts the build without waiting for it
+            client.getJson(query + "&stale=update_after");
+            indexMonitor.awaitBuild(bucketName, design, startTimeout, timeout);
+            // returns as soon as the index is up to date
+            client.getJson(query + "&stale=false");
+        }
+        catch (RestApiException e) {
+            if (e.getStatusLine() != null && e.getStatusLine().getStatusCode() == 404) {
+                throw shadowConflict(bucketName, design);
+            }
+            throw e;
+        }
+        catch (IOException e) {
+            throw new RestApiException(e);
+        }
+    }
+
+    private static RestApiException shadowConflict(String bucketName, String shadow) {
+        return new RestApiException("Shadow design document " + bucketName + "/" + shadow
+                + " replaced by a concurrent rollout", 409);
+    }
+
+    private static String firstView(JsonObject document) {
+        JsonElement views = document.get("views");
+        if (views == null || !views.isJsonObject()) {
+            return null;
+        }
+        for (Map.Entry<String, JsonElement> view : views.getAsJsonObject().entrySet()) {
+            return view.getKey();
+        }
+        return null;
+    }
+}
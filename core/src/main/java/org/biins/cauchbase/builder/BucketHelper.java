@@ -0,0 +1,34 @@
+package org.biins.cauchbase.builder;
+
+import com.couchbase.cbadmin.client.BucketConfig;
+import org.biins.cauchbase.Bucket;
+import org.biins.cauchbase.metadata.BucketMetadata;
+
+/**
+ * @author Martin Janys
+ */
+public class BucketHelper {
+
+    public static BucketConfig build(Bucket bucket) {
+        return build(bucket, null);
+    }
+
+    public static BucketConfig build(Bucket bucket, String password) {
+        return build(BucketMetadata.from(bucket), password);
+    }
+
+    public static BucketConfig build(BucketMetadata bucket, String password) {
+        BucketConfig bucketConfig = new BucketConfig(bucket.getName());
+
+        if (password != null) {
+            bucketConfig.setSaslPassword(password);
+        }
+
+        bucketConfig.bucketType = bucket.getType();
+        bucketConfig.ramQuotaMB = bucket.getRamQuotaMB();
+        bucketConfig.replicaCount = bucket.getReplicaCount();
+        bucketConfig.shouldIndexReplicas = bucket.isShouldIndexReplicas();
+
+        return bucketConfig;
+    }
+}
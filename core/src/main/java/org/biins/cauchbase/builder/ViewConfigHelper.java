@@ -2,6 +2,7 @@ package org.biins.cauchbase.builder;
 
 import com.couchbase.cbadmin.client.ViewConfigBuilder;
 import org.biins.cauchbase.View;
+import org.biins.cauchbase.metadata.ViewMetadata;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -27,7 +28,11 @@ public class ViewConfigHelper {
                 !view.reduce().isEmpty() ? resolveFunction(view.reduce()) : null);
     }
 
-    private static String resolveFunction(String func) {
+    public static void addView(ViewConfigBuilder viewConfigBuilder, ViewMetadata view) {
+        viewConfigBuilder.view(view.getName(), view.getMap(), view.getReduce());
+    }
+
+    public static String resolveFunction(String func) {
         if (func.startsWith(CLASS_PATH_PREFIX)) {
             return readClassPathResource(func);
         }
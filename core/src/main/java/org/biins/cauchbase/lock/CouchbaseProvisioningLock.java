@@ -0,0 +1,161 @@
+package org.biins.cauchbase.lock;
+
+import com.couchbase.client.core.CouchbaseException;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.JsonDocument;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProvisioningLock} keeping leases as documents in a bucket, shared by all instances using the cluster.
+ * <p>
+ * A lease is acquired by inserting the document {@code auto-views::lease::<resource>}, which fails while another
+ * instance holds it. The document expires after {@link #setTtl(int) ttl} seconds and is renewed by its holder
+ * three times per ttl, so the lease of a crashed instance ends by itself. A lease whose document is gone or
+ * owned by another instance, or which was not renewed within ttl, is {@link Lease#isValid() lost} and no longer
+ * renewed. Closing the lease removes the document unless it was taken over meanwhile.
+ */
+public class CouchbaseProvisioningLock implements ProvisioningLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(CouchbaseProvisioningLock.class);
+
+    public static final String KEY_PREFIX = "auto-views::lease::";
+
+    private static final ScheduledExecutorService RENEWALS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "auto-views-lease-renewal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Bucket bucket;
+    private final String owner;
+    private int ttl = 60;
+
+    public CouchbaseProvisioningLock(Bucket bucket) {
+        this(bucket, ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID());
+    }
+
+    /**
+     * @param owner identification of this instance stored in the lease
+     */
+    public CouchbaseProvisioningLock(Bucket bucket, String owner) {
+        this.bucket = bucket;
+        this.owner = owner;
+    }
+
+    /**
+     * Lifetime of a lease not renewed by its holder, in seconds.
+     */
+    public void setTtl(int ttl) {
+        if (ttl < 3) {
+            throw new IllegalArgumentException("Ttl must be at least 3 seconds");
+        }
+        this.ttl = ttl;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    @Override
+    public Lease tryAcquire(String resource) throws IOException {
+        final String id = KEY_PREFIX + resource;
+        JsonObject content = JsonObject.create()
+                .put("owner", owner)
+                .put("acquired", System.currentTimeMillis());
+        try {
+            bucket.insert(JsonDocument.create(id, ttl, content));
+        }
+        catch (DocumentAlreadyExistsException e) {
+            return null;
+        }
+        catch (CouchbaseException e) {
+            throw new IOException("Can't acquire lease " + id, e);
+        }
+
+        return new CouchbaseLease(id, ttl);
+    }
+
+    private class CouchbaseLease implements Lease {
+
+        private final String id;
+        private final int ttl;
+        private final ScheduledFuture<?> renewal;
+        private volatile long renewed = System.currentTimeMillis();
+        private volatile boolean lost;
+
+        CouchbaseLease(String id, int ttl) {
+            this.id = id;
+            this.ttl = ttl;
+            long period = TimeUnit.SECONDS.toMillis(ttl) / 3;
+            this.renewal = RENEWALS.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public boolean isValid() {
+            return !lost && System.currentTimeMillis() - renewed < TimeUnit.SECONDS.toMillis(ttl);
+        }
+
+        /**
+         * Extends the lease only while this instance owns it: the document is read, its owner checked and then
+         * replaced with a new expiry under the read CAS, so the lease of another holder is never extended.
+         */
+        private void renew() {
+            long now = System.currentTimeMillis();
+            JsonDocument lease;
+            try {
+                lease = bucket.get(id);
+                if (lease != null && owner.equals(lease.content().getString("owner"))) {
+                    bucket.replace(JsonDocument.create(id, ttl, lease.content(), lease.cas()));
+                    renewed = now;
+                    return;
+                }
+            }
+            catch (CASMismatchException | DocumentDoesNotExistException e) {
+                lease = null;
+            }
+            catch (CouchbaseException e) {
+                logger.warn("Can't renew lease {}", id, e);
+                return;
+            }
+            logger.warn("Lease {} lost, {}", id, lease == null ? "expired or taken over" : "taken over by " + lease.content().getString("owner"));
+            lost = true;
+            renewal.cancel(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            renewal.cancel(false);
+            if (!lost) {
+                release(id);
+            }
+        }
+    }
+
+    private void release(String id) throws IOException {
+        try {
+            JsonDocument lease = bucket.get(id);
+            if (lease != null && owner.equals(lease.content().getString("owner"))) {
+                bucket.remove(lease);
+            }
+        }
+        catch (CASMismatchException | DocumentDoesNotExistException e) {
+            logger.debug("Lease {} taken over before release", id);
+        }
+        catch (CouchbaseException e) {
+            throw new IOException("Can't release lease " + id, e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.biins.cauchbase.lock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link ProvisioningLock} backed by OS file locks in a directory, for instances on one host or sharing a file
+ * system with working locks, e.g. in tests. A lease ends with the process holding it.
+ */
+public class FileProvisioningLock implements ProvisioningLock {
+
+    private final File directory;
+
+    public FileProvisioningLock(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Lease tryAcquire(String resource) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+        File file = new File(directory, resource.replaceAll("[^A-Za-z0-9._-]", "_") + ".lock");
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        final FileLock lock;
+        try {
+            lock = channel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            // held by this JVM
+            channel.close();
+            return null;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            return null;
+        }
+        return () -> {
+            try {
+                lock.release();
+            }
+            finally {
+                channel.close();
+            }
+        };
+    }
+}
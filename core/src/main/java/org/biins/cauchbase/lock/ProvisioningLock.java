@@ -0,0 +1,34 @@
+package org.biins.cauchbase.lock;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Lets only one of many application instances provision a design document, the others wait for its result.
+ *
+ * @see org.biins.cauchbase.AutoViews#setProvisioningLock(ProvisioningLock)
+ */
+public interface ProvisioningLock {
+
+    /**
+     * Tries to become the only instance provisioning the resource, without waiting.
+     *
+     * @param resource name of the provisioned resource, e.g. {@code bucket/design}
+     * @return the lease, or null if another instance holds it
+     */
+    Lease tryAcquire(String resource) throws IOException;
+
+    /**
+     * Exclusive right to provision a resource, until closed or until the holder dies.
+     */
+    interface Lease extends Closeable {
+
+        /**
+         * Whether the lease is still held. A lease can be lost before it is closed, e.g. when it expired
+         * without being renewed and another instance acquired it. Writes must not be made under a lost lease.
+         */
+        default boolean isValid() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.biins.cauchbase.metadata;
+
+import com.couchbase.cbadmin.assets.Bucket.BucketType;
+import org.biins.cauchbase.Bucket;
+
+import java.io.Serializable;
+
+/**
+ * Settings of a {@link Bucket} annotation.
+ */
+public class BucketMetadata implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private String design;
+    private BucketType type;
+    private int ramQuotaMB;
+    private int replicaCount;
+    private boolean shouldIndexReplicas;
+
+    public BucketMetadata(String name, String design, BucketType type, int ramQuotaMB, int replicaCount, boolean shouldIndexReplicas) {
+        this.name = name;
+        this.design = design;
+        this.type = type;
+        this.ramQuotaMB = ramQuotaMB;
+        this.replicaCount = replicaCount;
+        this.shouldIndexReplicas = shouldIndexReplicas;
+    }
+
+    public static BucketMetadata from(Bucket bucket) {
+        return new BucketMetadata(bucket.name(), bucket.design(), bucket.type(), bucket.ramQuotaMB(), bucket.replicaCount(), bucket.shouldIndexReplicas());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDesign() {
+        return design;
+    }
+
+    public BucketType getType() {
+        return type;
+    }
+
+    public int getRamQuotaMB() {
+        return ramQuotaMB;
+    }
+
+    public int getReplicaCount() {
+        return replicaCount;
+    }
+
+    public boolean isShouldIndexReplicas() {
+        return shouldIndexReplicas;
+    }
+}
@@ -0,0 +1,47 @@
+package org.biins.cauchbase.metadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bucket and views declared by one class.
+ */
+public class ClassMetadata {
+
+    private String className;
+    private BucketMetadata bucket;
+    private List<ViewMetadata> views;
+
+    public ClassMetadata(String className, BucketMetadata bucket, List<ViewMetadata> views) {
+        this.className = className;
+        this.bucket = bucket;
+        this.views = new ArrayList<>(views);
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public BucketMetadata getBucket() {
+        return bucket;
+    }
+
+    public List<ViewMetadata> getViews() {
+        return Collections.unmodifiableList(views);
+    }
+
+    /**
+     * @return the metadata with all views {@link ViewMetadata#resolve() resolved}
+     */
+    public ClassMetadata resolve() {
+        List<ViewMetadata> resolved = new ArrayList<>(views.size());
+        boolean changed = false;
+        for (ViewMetadata view : views) {
+            ViewMetadata resolvedView = view.resolve();
+            resolved.add(resolvedView);
+            changed |= resolvedView != view;
+        }
+        return changed ? new ClassMetadata(className, bucket, resolved) : this;
+    }
+}
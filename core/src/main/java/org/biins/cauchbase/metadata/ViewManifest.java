@@ -0,0 +1,111 @@
+package org.biins.cauchbase.metadata;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Metadata of all {@code @Bucket} classes generated at build time by
+ * {@link org.biins.cauchbase.processor.ViewManifestProcessor}.
+ * <p>
+ * Classes missing from the manifest, e.g. because they were compiled
+ * without the processor, are read reflectively by {@link org.biins.cauchbase.AutoViews}.
+ */
+public class ViewManifest {
+
+    public static final String LOCATION = "META-INF/couchbase-auto-views/manifest.json";
+    // 2: scripts may be kept as classpath: references
+    public static final int VERSION = 2;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Map<ClassLoader, ViewManifest> LOADED = new WeakHashMap<>();
+
+    private int version = VERSION;
+    private List<ClassMetadata> classes = new ArrayList<>();
+    private transient Map<String, ClassMetadata> byClassName;
+
+    public ViewManifest() {
+    }
+
+    public ViewManifest(Collection<ClassMetadata> classes) {
+        this.classes = new ArrayList<>(classes);
+    }
+
+    /**
+     * Same as {@link #load(ClassLoader)}, but loads the manifests only once per class loader.
+     */
+    public static ViewManifest cached(ClassLoader classLoader) {
+        synchronized (LOADED) {
+            ViewManifest manifest = LOADED.get(classLoader);
+            if (manifest == null) {
+                manifest = load(classLoader);
+                LOADED.put(classLoader, manifest);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Loads and merges all manifests visible to the class loader.
+     *
+     * @return the manifest, empty if there is none
+     */
+    public static ViewManifest load(ClassLoader classLoader) {
+        ViewManifest manifest = new ViewManifest();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(LOCATION);
+            while (resources.hasMoreElements()) {
+                try (Reader reader = new InputStreamReader(resources.nextElement().openStream(), StandardCharsets.UTF_8)) {
+                    ViewManifest part = read(reader);
+                    if (part.version == VERSION && part.classes != null) {
+                        manifest.classes.addAll(part.classes);
+                    }
+                }
+            }
+        }
+        catch (IOException | JsonParseException e) {
+            throw new IllegalStateException("Can't read " + LOCATION, e);
+        }
+        return manifest;
+    }
+
+    public static ViewManifest read(Reader reader) {
+        return GSON.fromJson(reader, ViewManifest.class);
+    }
+
+    public void write(Writer writer) throws IOException {
+        GSON.toJson(this, writer);
+        writer.flush();
+    }
+
+    /**
+     * @return metadata of the class with its scripts read, or null if it's not in the manifest
+     */
+    public synchronized ClassMetadata get(String className) {
+        if (byClassName == null) {
+            Map<String, ClassMetadata> index = new HashMap<>();
+            for (ClassMetadata metadata : classes) {
+                index.put(metadata.getClassName(), metadata);
+            }
+            byClassName = index;
+        }
+        ClassMetadata metadata = byClassName.get(className);
+        if (metadata != null) {
+            ClassMetadata resolved = metadata.resolve();
+            if (resolved != metadata) {
+                byClassName.put(className, resolved);
+            }
+            return resolved;
+        }
+        return null;
+    }
+
+    public List<ClassMetadata> getClasses() {
+        return Collections.unmodifiableList(classes);
+    }
+}
@@ -0,0 +1,83 @@
+package org.biins.cauchbase.metadata;
+
+import com.couchbase.cbadmin.client.DesignDocDiff;
+import org.biins.cauchbase.View;
+import org.biins.cauchbase.builder.ViewConfigHelper;
+
+/**
+ * A {@link View} with its map and reduce functions resolved to source code.
+ * <p>
+ * In the {@link ViewManifest} functions read from scripts are inlined at build time. With the
+ * {@link org.biins.cauchbase.processor.ViewManifestProcessor#SCRIPT_REFERENCES} option they are kept as
+ * {@code classpath:} references instead and read at runtime by {@link #resolve()}.
+ */
+public class ViewMetadata {
+
+    private static final String CLASS_PATH_PREFIX = "classpath:";
+
+    private String name;
+    private String map;
+    private String reduce;
+    private String hash;
+
+    /**
+     * @param map map function or {@code classpath:} reference
+     * @param reduce reduce function or {@code classpath:} reference, null if the view has none
+     */
+    public ViewMetadata(String name, String map, String reduce) {
+        this.name = name;
+        this.map = map;
+        this.reduce = reduce;
+        this.hash = isResolved() ? DesignDocDiff.hash(map, reduce) : null;
+    }
+
+    public static ViewMetadata from(View view) {
+        return new ViewMetadata(
+                view.name(),
+                ViewConfigHelper.resolveFunction(view.map()),
+                !view.reduce().isEmpty() ? ViewConfigHelper.resolveFunction(view.reduce()) : null);
+    }
+
+    /**
+     * @return false if a function is a {@code classpath:} reference
+     */
+    public boolean isResolved() {
+        return !isReference(map) && !isReference(reduce);
+    }
+
+    /**
+     * @return the view with {@code classpath:} references replaced by the scripts, this view if there are none
+     */
+    public ViewMetadata resolve() {
+        if (isResolved()) {
+            return this;
+        }
+        return new ViewMetadata(name,
+                ViewConfigHelper.resolveFunction(map),
+                reduce != null ? ViewConfigHelper.resolveFunction(reduce) : null);
+    }
+
+    private static boolean isReference(String function) {
+        return function != null && function.startsWith(CLASS_PATH_PREFIX);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMap() {
+        return map;
+    }
+
+    public String getReduce() {
+        return reduce;
+    }
+
+    /**
+     * @return hash of the normalized map and reduce functions, null if the view is not {@link #isResolved() resolved}
+     * @see DesignDocDiff#hash(String, String)
+     */
+    public String getHash() {
+        return hash;
+    }
+}
@@ -0,0 +1,198 @@
+package org.biins.cauchbase.processor;
+
+import org.biins.cauchbase.Bucket;
+import org.biins.cauchbase.View;
+import org.biins.cauchbase.metadata.BucketMetadata;
+import org.biins.cauchbase.metadata.ClassMetadata;
+import org.biins.cauchbase.metadata.ViewManifest;
+import org.biins.cauchbase.metadata.ViewMetadata;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generates the {@link ViewManifest} of all {@link Bucket} classes of a compilation.
+ * <p>
+ * Views are validated and their {@code classpath:} functions are inlined and hashed, so
+ * {@link org.biins.cauchbase.AutoViews} neither reflects over the classes nor reads script files at runtime.
+ * Scripts are looked up in the class output (where Maven copies resources before compiling), the source path and
+ * the class path. Missing scripts and functions that are not javascript functions fail the compilation.
+ * <p>
+ * With {@code -A}{@value #SCRIPT_REFERENCES}{@code =true} the scripts are kept as {@code classpath:} references
+ * and read at runtime instead, e.g. when they come from a dependency not visible to the compiler or are edited
+ * without recompiling. Missing scripts are then only warned about.
+ */
+@SupportedAnnotationTypes({"org.biins.cauchbase.Bucket", "org.biins.cauchbase.View"})
+@SupportedOptions(ViewManifestProcessor.SCRIPT_REFERENCES)
+public class ViewManifestProcessor extends AbstractProcessor {
+
+    public static final String SCRIPT_REFERENCES = "autoViews.scriptReferences";
+
+    private static final String CLASS_PATH_PREFIX = "classpath:/";
+    private static final Set<String> BUILTIN_REDUCE = new HashSet<>(Arrays.asList("_count", "_sum", "_stats"));
+
+    private final Map<String, ClassMetadata> classes = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Bucket.class)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                readClass((TypeElement) element);
+            }
+        }
+        if (roundEnv.processingOver() && !classes.isEmpty()) {
+            writeManifest();
+        }
+        return false;
+    }
+
+    private void readClass(TypeElement type) {
+        List<ViewMetadata> views = new ArrayList<>();
+        try {
+            readView(type, type.getAnnotation(View.class), views);
+            for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+                if (member.getKind() == ElementKind.METHOD && member.getModifiers().contains(Modifier.PUBLIC)) {
+                    readView(member, member.getAnnotation(View.class), views);
+                }
+            }
+        }
+        catch (InvalidScriptException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            return;
+        }
+
+        String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+        classes.put(className, new ClassMetadata(className, BucketMetadata.from(type.getAnnotation(Bucket.class)), views));
+    }
+
+    private void readView(Element element, View view, List<ViewMetadata> views) throws InvalidScriptException {
+        if (view == null) {
+            return;
+        }
+        String map = resolveFunction(view.map(), element);
+        String reduce = view.reduce().isEmpty() ? null : resolveFunction(view.reduce(), element);
+        if (!isReference(map) && !isFunction(map)) {
+            throw new InvalidScriptException("Map of view " + view.name() + " must be a javascript function", element);
+        }
+        if (reduce != null && !isReference(reduce) && !BUILTIN_REDUCE.contains(reduce.trim()) && !isFunction(reduce)) {
+            throw new InvalidScriptException("Reduce of view " + view.name() + " must be a javascript function or one of "
+                    + BUILTIN_REDUCE, element);
+        }
+        views.add(new ViewMetadata(view.name(), map, reduce));
+    }
+
+    /**
+     * @return source of the function, or the {@code classpath:} reference if scripts are kept as references
+     */
+    private String resolveFunction(String func, Element element) throws InvalidScriptException {
+        if (!func.startsWith("classpath:")) {
+            return func;
+        }
+        if (!func.startsWith(CLASS_PATH_PREFIX)) {
+            throw new InvalidScriptException("Set absolute classpath path starts with '/'. For example classpath:/path/to/script.js", element);
+        }
+        String path = func.substring(CLASS_PATH_PREFIX.length());
+        for (StandardLocation location : Arrays.asList(StandardLocation.CLASS_OUTPUT, StandardLocation.SOURCE_PATH, StandardLocation.CLASS_PATH)) {
+            String source = readResource(location, path);
+            if (source != null) {
+                return isScriptReferences() ? func : source;
+            }
+        }
+        if (!isScriptReferences()) {
+            throw new InvalidScriptException("Script " + func + " not found", element);
+        }
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Script " + func + " not found", element);
+        return func;
+    }
+
+    private boolean isReference(String func) {
+        return isScriptReferences() && func.startsWith(CLASS_PATH_PREFIX);
+    }
+
+    private boolean isScriptReferences() {
+        return Boolean.parseBoolean(processingEnv.getOptions().get(SCRIPT_REFERENCES));
+    }
+
+    private String readResource(StandardLocation location, String path) {
+        try {
+            FileObject resource = processingEnv.getFiler().getResource(location, "", path);
+            StringBuilder sb = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    sb.append(line).append('\n');
+                }
+            }
+            return sb.toString();
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // not present in this location, or the location is not supported by the compiler
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the source is a function expression, after leading comments
+     */
+    static boolean isFunction(String source) {
+        int i = 0;
+        while (i < source.length()) {
+            if (Character.isWhitespace(source.charAt(i))) {
+                i++;
+            }
+            else if (source.startsWith("//", i)) {
+                int end = source.indexOf('\n', i);
+                i = end < 0 ? source.length() : end + 1;
+            }
+            else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return false;
+                }
+                i = end + 2;
+            }
+            else {
+                break;
+            }
+        }
+        return source.startsWith("function", i);
+    }
+
+    private void writeManifest() {
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ViewManifest.LOCATION);
+            try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+                new ViewManifest(classes.values()).write(writer);
+            }
+        }
+        catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can't write " + ViewManifest.LOCATION + ": " + e.getMessage());
+        }
+    }
+
+    private static class InvalidScriptException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        private InvalidScriptException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.biins.cauchbase.scanner;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds classes annotated by {@code @Bucket} in the given packages by reading the class files directly.
+ * Scanned classes are neither loaded nor initialized, so no beans are created and no static initializers run.
+ * <p>
+ * Directories and jar files visible to the class loader are supported.
+ */
+public class ClassPathScanner {
+
+    private static final String BUCKET_DESCRIPTOR = "Lorg/biins/cauchbase/Bucket;";
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final ClassLoader classLoader;
+
+    public ClassPathScanner(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public ClassPathScanner() {
+        this(defaultClassLoader());
+    }
+
+    private static ClassLoader defaultClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader != null ? classLoader : ClassPathScanner.class.getClassLoader();
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Scans the packages including their subpackages.
+     *
+     * @return names of {@code @Bucket} classes in classpath order, without duplicates
+     */
+    public Set<String> scan(String ... packages) throws IOException {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (String basePackage : packages) {
+            String path = basePackage.replace('.', '/');
+            if (!path.isEmpty() && !path.endsWith("/")) {
+                path += "/";
+            }
+            Enumeration<URL> roots = classLoader.getResources(path);
+            while (roots.hasMoreElements()) {
+                scanRoot(roots.nextElement(), path, classNames);
+            }
+        }
+        return classNames;
+    }
+
+    private void scanRoot(URL root, String path, Set<String> classNames) throws IOException {
+        if ("file".equals(root.getProtocol())) {
+            scanDirectory(toFile(root), classNames);
+        }
+        else if ("jar".equals(root.getProtocol())) {
+            URLConnection connection = root.openConnection();
+            if (connection instanceof JarURLConnection) {
+                JarURLConnection jarConnection = (JarURLConnection) connection;
+                jarConnection.setUseCaches(false);
+                try (JarFile jar = jarConnection.getJarFile()) {
+                    scanJar(jar, path, classNames);
+                }
+            }
+        }
+        else {
+            throw new IOException("Unsupported classpath location " + root);
+        }
+    }
+
+    private static File toFile(URL url) throws IOException {
+        try {
+            return new File(url.toURI());
+        }
+        catch (URISyntaxException | IllegalArgumentException e) {
+            return new File(URLDecoder.decode(url.getPath(), StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    private void scanDirectory(File directory, Set<String> classNames) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                scanDirectory(file, classNames);
+            }
+            else if (isCandidate(file.getName())) {
+                try (InputStream in = new FileInputStream(file)) {
+                    inspect(in, classNames);
+                }
+            }
+        }
+    }
+
+    private void scanJar(JarFile jar, String path, Set<String> classNames) throws IOException {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().startsWith(path) && isCandidate(entry.getName())) {
+                try (InputStream in = jar.getInputStream(entry)) {
+                    inspect(in, classNames);
+                }
+            }
+        }
+    }
+
+    private static boolean isCandidate(String name) {
+        return name.endsWith(CLASS_SUFFIX)
+                && !name.endsWith("package-info.class")
+                && !name.endsWith("module-info.class");
+    }
+
+    private void inspect(InputStream in, Set<String> classNames) throws IOException {
+        ClassFileReader reader = ClassFileReader.read(new ByteArrayInputStream(IOUtils.toByteArray(in)));
+        if (!reader.isAnnotationType() && reader.getAnnotations().contains(BUCKET_DESCRIPTOR)) {
+            classNames.add(reader.getClassName());
+        }
+    }
+}
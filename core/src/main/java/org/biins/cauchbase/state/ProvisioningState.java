@@ -0,0 +1,257 @@
+package org.biins.cauchbase.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Local record of what was provisioned on which cluster, kept in a memory-mapped append-only file.
+ * <p>
+ * Each record stores a hash under a key for a cluster identifier, the last record of a key wins. Records are
+ * checksummed; a record torn by a crash and everything after it is dropped when the file is opened, the state
+ * is only a cache of the cluster's contents. The file is compacted on open when most records are superseded.
+ * <p>
+ * The file is locked while open, a second process opening it fails with an {@link IOException}.
+ */
+public class ProvisioningState implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvisioningState.class);
+
+    private static final int MAGIC = 0x43424156;
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int RECORD_HEADER = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final char SEPARATOR = '\u0000';
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final Map<String, String> entries = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private int records;
+
+    private ProvisioningState(File file, FileChannel channel, FileLock lock) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the state file, creating it if it doesn't exist.
+     */
+    public static ProvisioningState open(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory " + parent);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            }
+            catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("State file " + file + " is used by another process");
+            }
+            ProvisioningState state = new ProvisioningState(file, channel, lock);
+            state.load();
+            return state;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the last hash recorded under the key for the cluster, or null
+     */
+    public synchronized String get(String clusterId, String key) {
+        return entries.get(clusterId + SEPARATOR + key);
+    }
+
+    public boolean isRecorded(String clusterId, String key, String hash) {
+        return hash.equals(get(clusterId, key));
+    }
+
+    /**
+     * Appends the hash of the key unless it is already recorded.
+     */
+    public synchronized void record(String clusterId, String key, String hash) throws IOException {
+        String entry = clusterId + SEPARATOR + key;
+        if (hash.equals(entries.get(entry))) {
+            return;
+        }
+        append(entry + SEPARATOR + hash);
+        entries.put(entry, hash);
+        buffer.force();
+    }
+
+    /**
+     * Forgets everything recorded, e.g. after the cluster was modified by someone else.
+     */
+    public synchronized void clear() throws IOException {
+        entries.clear();
+        rewrite();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            lock.release();
+        }
+        finally {
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        map(Math.max(INITIAL_CAPACITY, capacityFor(size)));
+        if (size == 0) {
+            writeHeader();
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            logger.warn("Unknown format of state file {}, starting with empty state", file);
+            rewrite();
+            return;
+        }
+
+        buffer.position(HEADER);
+        while (true) {
+            int start = buffer.position();
+            String payload = readRecord();
+            if (payload == null) {
+                buffer.position(start);
+                break;
+            }
+            int keyEnd = payload.lastIndexOf(SEPARATOR);
+            if (keyEnd < 0) {
+                buffer.position(start);
+                break;
+            }
+            entries.put(payload.substring(0, keyEnd), payload.substring(keyEnd + 1));
+            records++;
+        }
+        // drops a torn record and garbage after it
+        clearFrom(buffer.position());
+
+        if (records > 64 && records > 2 * entries.size()) {
+            logger.debug("Compacting state file {}, {} records of {} entries", file, records, entries.size());
+            rewrite();
+        }
+    }
+
+    /**
+     * @return payload of the record at the position, or null at the end of valid records
+     */
+    private String readRecord() {
+        try {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (crc(payload) != checksum) {
+                return null;
+            }
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+        catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private void append(String record) throws IOException {
+        byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+        int needed = RECORD_HEADER + payload.length + RECORD_HEADER;
+        if (buffer.remaining() < needed) {
+            int position = buffer.position();
+            map(capacityFor((long) position + needed));
+            buffer.position(position);
+        }
+        int start = buffer.position();
+        // the length is written last, a record is not visible before it is complete
+        buffer.position(start + 4);
+        buffer.putInt(crc(payload));
+        buffer.put(payload);
+        buffer.putInt(start, payload.length);
+        records++;
+    }
+
+    private void rewrite() throws IOException {
+        clearFrom(HEADER);
+        writeHeader();
+        records = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            append(entry.getKey() + SEPARATOR + entry.getValue());
+        }
+        buffer.force();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.position(HEADER);
+    }
+
+    private void clearFrom(int position) {
+        ByteBuffer zeros = buffer.duplicate();
+        zeros.position(position);
+        while (zeros.hasRemaining()) {
+            zeros.put((byte) 0);
+        }
+        buffer.position(position);
+    }
+
+    private void map(long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("State file " + file + " is too large");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private static long capacityFor(long size) {
+        long capacity = INITIAL_CAPACITY;
+        while (capacity < size) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,92 @@
+package com.couchbase.cbadmin.client;
+
+import org.biins.cauchbase.mock.Fault;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncCouchbaseAdminImplTest {
+  private MockCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    cluster = new MockCluster().start();
+    cluster.createBucket("beers");
+  }
+
+  @After
+  public void tearDown() {
+    cluster.close();
+  }
+
+  @Test
+  public void parsesOnExecutor() throws Exception {
+    final AtomicInteger parsed = new AtomicInteger();
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        parsed.incrementAndGet();
+        command.run();
+      }
+    };
+    AsyncCouchbaseAdminImpl client = new AsyncCouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password",
+            new AdminClientConfig(), executor);
+    try {
+      assertTrue(client.getBuckets().get(5, TimeUnit.SECONDS).containsKey("beers"));
+      assertEquals(1, parsed.get());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  public void retriesAndRecordsMetrics() throws Exception {
+    cluster.addFault(new Fault("GET", "/pools/default/buckets").error(503));
+    EndpointMetrics metrics = new EndpointMetrics();
+    AsyncCouchbaseAdminImpl client = new AsyncCouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password",
+            new AdminClientConfig()
+                    .metrics(metrics)
+                    .retryPolicy(new RetryPolicy().maxAttempts(3).backoff(1, 1, 1)));
+    try {
+      client.getBuckets().get(5, TimeUnit.SECONDS);
+      fail("Unavailable node answered");
+    } catch (ExecutionException ex) {
+      assertEquals(503, ((RestApiException) ex.getCause()).getStatusLine().getStatusCode());
+    } finally {
+      client.close();
+    }
+    EndpointMetrics.Snapshot snapshot = metrics.snapshot().get("GET /pools/default/buckets");
+    assertEquals(2, snapshot.getRetries());
+    assertEquals(Long.valueOf(3), snapshot.getStatuses().get(503));
+  }
+
+  @Test
+  public void timesOutOnHungNode() throws Exception {
+    // accepts connections, never answers
+    try (ServerSocket hung = new ServerSocket(0)) {
+      AsyncCouchbaseAdminImpl client = new AsyncCouchbaseAdminImpl(
+              new URL("http://127.0.0.1:" + hung.getLocalPort() + "/"), "Administrator", "password",
+              new AdminClientConfig().socketTimeout(200).retryPolicy(RetryPolicy.NONE));
+      try {
+        client.getBuckets().get(5, TimeUnit.SECONDS);
+        fail("Hung node answered");
+      } catch (ExecutionException ex) {
+        assertTrue(ex.getCause() instanceof RestApiException);
+      } finally {
+        client.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.couchbase.cbadmin.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+  private static final long LONG_TIMEOUT = 60000;
+
+  @Test
+  public void opensAfterConsecutiveFailures() throws RestApiException {
+    CircuitBreaker breaker = new CircuitBreaker("node", 3, LONG_TIMEOUT);
+    breaker.onFailure();
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.acquire();
+
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertRejected(breaker);
+  }
+
+  @Test
+  public void successResetsFailures() throws RestApiException {
+    CircuitBreaker breaker = new CircuitBreaker("node", 2, LONG_TIMEOUT);
+    breaker.onFailure();
+    breaker.onSuccess();
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.acquire();
+  }
+
+  @Test
+  public void trialSuccessCloses() throws RestApiException {
+    CircuitBreaker breaker = new CircuitBreaker("node", 1, 0);
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+    breaker.acquire();
+    breaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.acquire();
+    breaker.acquire();
+  }
+
+  @Test
+  public void trialFailureOpensAgain() throws RestApiException, InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker("node", 5, 50);
+    for (int i = 0; i < 5; i++) {
+      breaker.onFailure();
+    }
+    assertRejected(breaker);
+    Thread.sleep(60);
+
+    breaker.acquire();
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertRejected(breaker);
+  }
+
+  @Test
+  public void letsOneTrialThrough() throws RestApiException {
+    CircuitBreaker breaker = new CircuitBreaker("node", 1, 0);
+    breaker.onFailure();
+
+    breaker.acquire();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertRejected(breaker);
+
+    breaker.onSuccess();
+    breaker.acquire();
+  }
+
+  private static void assertRejected(CircuitBreaker breaker) {
+    try {
+      breaker.acquire();
+      fail("Request let through");
+    } catch (RestApiException ex) {
+      // expected
+    }
+  }
+}
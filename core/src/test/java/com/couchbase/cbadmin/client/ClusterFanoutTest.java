@@ -0,0 +1,70 @@
+package com.couchbase.cbadmin.client;
+
+import com.couchbase.cbadmin.assets.Node;
+import com.google.gson.JsonElement;
+import org.biins.cauchbase.mock.Fault;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterFanoutTest {
+  private MockCluster cluster;
+  private CouchbaseAdminImpl client;
+
+  @Before
+  public void setUp() throws Exception {
+    cluster = new MockCluster().start();
+    client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    cluster.close();
+  }
+
+  @Test
+  public void collectsAllNodes() throws Exception {
+    ClusterFanout.Result<JsonElement> result = new ClusterFanout(client).nodesSelf(2000);
+
+    assertTrue(result.toString(), result.isComplete());
+    assertEquals(client.getNodes().size(), result.getResults().size());
+  }
+
+  @Test
+  public void hungNodeReleasesThreadAtDeadline() throws Exception {
+    cluster.addFault(new Fault("GET", CouchbaseAdminImpl._P_NODES_SELF).latency(5000));
+    final BlockingQueue<Exception> ended = new LinkedBlockingQueue<Exception>();
+
+    ClusterFanout.Result<JsonElement> result = new ClusterFanout(client).run(
+            new ClusterFanout.NodeCall<JsonElement>() {
+              @Override
+              public JsonElement call(CouchbaseAdminImpl nodeClient, Node node) throws RestApiException, IOException {
+                try {
+                  return nodeClient.getJson(CouchbaseAdminImpl._P_NODES_SELF);
+                } catch (IOException ex) {
+                  ended.add(ex);
+                  throw ex;
+                }
+              }
+            }, 300);
+
+    assertFalse(result.isComplete());
+    assertTrue(result.getErrors().values().iterator().next() instanceof TimeoutException);
+    // the node request times out at the deadline, or its retry is cancelled, rather than waiting for the node
+    Exception ex = ended.poll(2, TimeUnit.SECONDS);
+    assertTrue(String.valueOf(ex), ex instanceof InterruptedIOException);
+  }
+}
@@ -0,0 +1,144 @@
+package com.couchbase.cbadmin.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.couchbase.cbadmin.client.DesignDocuments.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes of design documents over a stale {@code _rev}, against a {@link MockCluster}.
+ */
+public class DesignDocumentConflictTest {
+
+    private static final String BUCKET = "beers";
+    private static final String DESIGN = "beer";
+
+    private MockCluster cluster;
+
+    @Before
+    public void setUp() throws Exception {
+        cluster = new MockCluster().start();
+        cluster.createBucket(BUCKET);
+        cluster.putDesignDocument(BUCKET, DESIGN, json("{\"views\":{\"old\":{\"map\":\"function (doc) {}\"}}}"));
+    }
+
+    @After
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    public void readsRevisionFromMetaHeader() throws Exception {
+        CouchbaseAdminImpl client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password");
+        try {
+            JsonObject document = client.getDesignDocument(BUCKET, DESIGN);
+            assertEquals(cluster.getDesignDocument(BUCKET, DESIGN).get(DesignDocDiff.REV), document.get(DesignDocDiff.REV));
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void mergesAgainAfterConcurrentWrite() throws Exception {
+        InterleavedClient client = new InterleavedClient(cluster, new AdminClientConfig(), DESIGN, 1);
+        try {
+            DesignDocDiff diff = client.defineView(view("mine"), -1);
+
+            assertEquals(Collections.singletonList("mine"), new ArrayList<>(diff.getAdded()));
+            assertEquals(2, client.getReads());
+            assertViews("old", "other0", "mine");
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void failsAfterConflictAttempts() throws Exception {
+        InterleavedClient client = new InterleavedClient(cluster, new AdminClientConfig().conflictAttempts(3), DESIGN, Integer.MAX_VALUE);
+        try {
+            client.defineView(view("mine"), -1);
+            fail("Written over a stale revision");
+        }
+        catch (RestApiException ex) {
+            assertTrue(ex.isConflict());
+        }
+        finally {
+            client.close();
+        }
+        JsonObject views = cluster.getDesignDocument(BUCKET, DESIGN).getAsJsonObject("views");
+        assertFalse(views.has("mine"));
+        assertTrue(views.has("other2"));
+    }
+
+    @Test
+    public void concurrentWritersKeepAllViews() throws Exception {
+        int writers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<DesignDocDiff>> results = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                final ViewConfig config = view("v" + i);
+                results.add(executor.submit(() -> {
+                    CouchbaseAdminImpl client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password",
+                            new AdminClientConfig().conflictAttempts(20));
+                    try {
+                        start.await();
+                        return client.defineView(config, -1);
+                    }
+                    finally {
+                        client.close();
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < writers; i++) {
+                assertEquals(Collections.singletonList("v" + i), new ArrayList<>(results.get(i).get().getAdded()));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        JsonObject views = cluster.getDesignDocument(BUCKET, DESIGN).getAsJsonObject("views");
+        assertEquals(writers + 1, views.entrySet().size());
+    }
+
+    private void assertViews(String... names) {
+        JsonObject document = cluster.getDesignDocument(BUCKET, DESIGN);
+        assertNotNull(document);
+        List<String> views = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> view : document.getAsJsonObject("views").entrySet()) {
+            views.add(view.getKey());
+        }
+        Collections.sort(views);
+        List<String> expected = new ArrayList<>(Arrays.asList(names));
+        Collections.sort(expected);
+        assertEquals(expected, views);
+    }
+
+    private static ViewConfig view(String name) {
+        return DesignDocuments.view(BUCKET, DESIGN, name);
+    }
+}
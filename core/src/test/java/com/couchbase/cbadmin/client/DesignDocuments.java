@@ -0,0 +1,26 @@
+package com.couchbase.cbadmin.client;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Design documents and views used by the tests.
+ */
+public final class DesignDocuments {
+
+    private DesignDocuments() {
+    }
+
+    /**
+     * @return a design document with a single view emitting the property of the same name
+     */
+    public static ViewConfig view(String bucketName, String design, String name) {
+        return new ViewConfigBuilder(design, bucketName)
+                .view(name, "function (doc) { emit(doc." + name + "); }", null)
+                .build();
+    }
+
+    public static JsonObject json(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,47 @@
+package com.couchbase.cbadmin.client;
+
+import com.google.gson.JsonObject;
+import org.biins.cauchbase.mock.MockCluster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets another client write a design document of a {@link MockCluster} after each of the first reads,
+ * adding a view {@code other<n>} for the n-th read.
+ */
+public class InterleavedClient extends CouchbaseAdminImpl {
+    private final MockCluster cluster;
+    private final String design;
+    private final int interleaved;
+    private final AtomicInteger reads = new AtomicInteger();
+
+    public InterleavedClient(MockCluster cluster, AdminClientConfig config, String design, int interleaved) {
+        super(cluster.getUrl(), "Administrator", "password", config);
+        this.cluster = cluster;
+        this.design = design;
+        this.interleaved = interleaved;
+    }
+
+    /**
+     * @return the number of reads of the design document
+     */
+    public int getReads() {
+        return reads.get();
+    }
+
+    @Override
+    public JsonObject getDesignDocument(String bucketName, String design) throws RestApiException {
+        JsonObject document = super.getDesignDocument(bucketName, design);
+        if (!design.equals(this.design)) {
+            return document;
+        }
+        int read = reads.getAndIncrement();
+        if (read < interleaved) {
+            JsonObject written = cluster.getDesignDocument(bucketName, design);
+            written.getAsJsonObject("views").add("other" + read,
+                    DesignDocuments.json("{\"map\":\"function (doc) { emit(" + read + "); }\"}"));
+            cluster.putDesignDocument(bucketName, design, written);
+        }
+        return document;
+    }
+}
@@ -0,0 +1,96 @@
+package com.couchbase.cbadmin.client;
+
+import org.biins.cauchbase.mock.Fault;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ViewReadinessWatcherTest {
+  private static final int FAILURE_THRESHOLD = 3;
+
+  private MockCluster cluster;
+  private CouchbaseAdminImpl client;
+
+  @Before
+  public void setUp() throws Exception {
+    cluster = new MockCluster().start();
+    cluster.createBucket("beers");
+    client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password",
+            new AdminClientConfig().circuitBreaker(FAILURE_THRESHOLD, 60000));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    client.close();
+    cluster.close();
+  }
+
+  @Test
+  public void viewBuildingLongerThanFailureThresholdKeepsCircuitClosed() throws Exception {
+    ViewConfig config = new ViewConfigBuilder("beer", "beers")
+            .view("by_name", "function (doc) { emit(doc.name); }", null)
+            .build();
+    client.defineView(config, -1);
+    // the server answers 500 while the index is being built
+    Fault building = new Fault("/couchBase/beers/_design/beer/_view/").error(500);
+    cluster.addFault(building);
+
+    ViewReadinessWatcher watcher = new ViewReadinessWatcher(client);
+    try {
+      watcher.setInitialDelay(5);
+      watcher.setMaxDelay(10);
+      long before = cluster.getRequestCount();
+      CompletableFuture<Void> ready = watcher.watch(config, 10000);
+      while (cluster.getRequestCount() - before < 4 * FAILURE_THRESHOLD) {
+        assertTrue("Watch ended while the view was building", !ready.isDone());
+        Thread.sleep(5);
+      }
+      cluster.removeFault(building);
+
+      ready.get(10, TimeUnit.SECONDS);
+    } finally {
+      watcher.close();
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker().getState());
+    client.getBuckets();
+  }
+
+  @Test
+  public void connectionErrorsOpenCircuit() throws Exception {
+    URL closed;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closed = new URL("http://127.0.0.1:" + socket.getLocalPort() + "/");
+    }
+    CouchbaseAdminImpl unreachable = new CouchbaseAdminImpl(closed, "Administrator", "password",
+            new AdminClientConfig().retryPolicy(RetryPolicy.NONE).circuitBreaker(FAILURE_THRESHOLD, 60000));
+    try {
+      for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+        try {
+          unreachable.getJson("/pools/default/buckets");
+          fail("Connected to a closed port");
+        } catch (IOException ex) {
+          // expected
+        }
+      }
+      assertEquals(CircuitBreaker.State.OPEN,
+              unreachable.getCircuitBreakers().get("127.0.0.1:" + closed.getPort()).getState());
+    } finally {
+      unreachable.close();
+    }
+  }
+
+  private CircuitBreaker breaker() {
+    return client.getCircuitBreakers().get(cluster.getUrl().getHost() + ":" + cluster.getUrl().getPort());
+  }
+}
@@ -0,0 +1,80 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.assets.Bucket.BucketType;
+import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
+import com.couchbase.cbadmin.client.RestApiException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AutoViewsPlanTest {
+
+    @Bucket(name = "beers", design = "beer", type = BucketType.COUCHBASE)
+    @View(name = "by_name", map = "function (doc) { emit(doc.name); }")
+    public static class Beer {
+    }
+
+    private MockCluster cluster;
+    private CouchbaseAdminImpl client;
+    private AutoViews autoViews;
+
+    @Before
+    public void setUp() throws Exception {
+        cluster = new MockCluster().start();
+        cluster.createBucket("beers", "membase", 100, 0);
+        cluster.putDesignDocument("beers", "beer", json("{\"views\":{\"old\":{\"map\":\"function (doc) {}\"}}}"));
+        client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password");
+        autoViews = new AutoViews(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        cluster.close();
+    }
+
+    @Test
+    public void appliesPrunedPlan() {
+        autoViews.setPrune(true);
+        autoViews.apply(autoViews.plan(Collections.<Class<?>>singletonList(Beer.class)));
+
+        JsonObject views = cluster.getDesignDocument("beers", "beer").getAsJsonObject("views");
+        assertTrue(views.has("by_name"));
+        assertFalse(views.has("old"));
+    }
+
+    @Test
+    public void prunedPlanFailsAfterConcurrentWrite() {
+        autoViews.setPrune(true);
+        DeploymentPlan plan = autoViews.plan(Collections.<Class<?>>singletonList(Beer.class));
+
+        JsonObject written = cluster.getDesignDocument("beers", "beer");
+        written.getAsJsonObject("views").add("other", json("{\"map\":\"function (doc) { emit(null); }\"}"));
+        cluster.putDesignDocument("beers", "beer", written);
+        try {
+            autoViews.apply(plan);
+            fail("Applied a plan over a newer revision");
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof RestApiException);
+            assertTrue(((RestApiException) e.getCause()).isConflict());
+        }
+
+        JsonObject views = cluster.getDesignDocument("beers", "beer").getAsJsonObject("views");
+        assertTrue(views.has("other"));
+        assertFalse(views.has("by_name"));
+    }
+
+    private static JsonObject json(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,84 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.assets.Bucket.BucketType;
+import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
+import com.google.gson.JsonObject;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AutoViewsRegistryTest {
+
+    @Bucket(name = "beers", design = "beer", type = BucketType.COUCHBASE)
+    @View(name = "by_name", map = "function (doc) { emit(doc.name); }")
+    public static class Beer {
+    }
+
+    @Bucket(name = "beers", design = "beer", type = BucketType.COUCHBASE)
+    @View(name = "by_style", map = "function (doc) { emit(doc.style); }")
+    public static class ConflictingBeer {
+        @View(name = "by_name", map = "function (doc) { emit(doc.title); }")
+        public void byName() {
+        }
+    }
+
+    @Bucket(name = "beers", design = "brewery", type = BucketType.COUCHBASE, ramQuotaMB = 200)
+    @View(name = "by_city", map = "function (doc) { emit(doc.city); }")
+    public static class Brewery {
+    }
+
+    private MockCluster cluster;
+    private CouchbaseAdminImpl client;
+    private AutoViews autoViews;
+
+    @Before
+    public void setUp() throws Exception {
+        cluster = new MockCluster().start();
+        cluster.createBucket("beers", "membase", 100, 0);
+        client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password");
+        autoViews = new AutoViews(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        cluster.close();
+    }
+
+    @Test
+    public void rejectedClassLeavesNoViews() {
+        autoViews.register(Beer.class);
+        try {
+            autoViews.register(ConflictingBeer.class);
+            fail("Registered a conflicting view");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("by_name"));
+        }
+        autoViews.commit();
+
+        JsonObject views = cluster.getDesignDocument("beers", "beer").getAsJsonObject("views");
+        assertEquals(1, views.entrySet().size());
+        assertTrue(views.has("by_name"));
+    }
+
+    @Test
+    public void rejectedBucketSettingsLeaveNoDesign() {
+        autoViews.register(Beer.class);
+        try {
+            autoViews.register(Brewery.class);
+            fail("Registered conflicting bucket settings");
+        }
+        catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("beers"));
+        }
+        autoViews.commit();
+
+        assertEquals(null, cluster.getDesignDocument("beers", "brewery"));
+    }
+}
@@ -0,0 +1,142 @@
+package org.biins.cauchbase;
+
+import com.couchbase.cbadmin.client.AdminClientConfig;
+import com.couchbase.cbadmin.client.CouchbaseAdminImpl;
+import com.couchbase.cbadmin.client.DesignDocDiff;
+import com.couchbase.cbadmin.client.DesignDocuments;
+import com.couchbase.cbadmin.client.InterleavedClient;
+import com.couchbase.cbadmin.client.RestApiException;
+import com.couchbase.cbadmin.client.ViewConfig;
+import com.google.gson.JsonObject;
+import org.biins.cauchbase.mock.MockCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static com.couchbase.cbadmin.client.DesignDocuments.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StagedRolloutTest {
+
+    private static final String BUCKET = "beers";
+    private static final String DESIGN = "beer";
+
+    private MockCluster cluster;
+
+    @Before
+    public void setUp() throws Exception {
+        cluster = new MockCluster().start();
+        cluster.createBucket(BUCKET);
+        cluster.putDesignDocument(BUCKET, DESIGN, json("{\"views\":{\"old\":{\"map\":\"function (doc) {}\"}}}"));
+        cluster.setIndexBuildTime(50);
+    }
+
+    @After
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    public void promotesThroughShadow() throws Exception {
+        InterleavedClient client = interleaved(0);
+        try {
+            DesignDocDiff diff = rollout(client).define(view("mine"));
+
+            assertEquals(Collections.singletonList("mine"), new ArrayList<>(diff.getAdded()));
+            assertTrue(views().has("old"));
+            assertTrue(views().has("mine"));
+            assertNull(cluster.getDesignDocument(BUCKET, StagedRollout.shadowName(DESIGN)));
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void replacesLeftoverShadow() throws Exception {
+        cluster.putDesignDocument(BUCKET, StagedRollout.shadowName(DESIGN),
+                json("{\"views\":{\"stale\":{\"map\":\"function (doc) { emit(null); }\"}}}"));
+        InterleavedClient client = interleaved(0);
+        try {
+            rollout(client).define(view("mine"));
+
+            assertTrue(views().has("mine"));
+            assertNull(cluster.getDesignDocument(BUCKET, StagedRollout.shadowName(DESIGN)));
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void mergesAgainAfterConcurrentWrite() throws Exception {
+        InterleavedClient client = interleaved(1);
+        try {
+            DesignDocDiff diff = rollout(client).define(view("mine"));
+
+            assertEquals(Collections.singletonList("mine"), new ArrayList<>(diff.getAdded()));
+            assertTrue(views().has("other0"));
+            assertTrue(views().has("mine"));
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void failsAfterConflictAttempts() throws Exception {
+        InterleavedClient client = interleaved(Integer.MAX_VALUE);
+        try {
+            StagedRollout rollout = rollout(client);
+            rollout.setConflictAttempts(2);
+            rollout.define(view("mine"));
+            fail("Promoted over a stale revision");
+        }
+        catch (RestApiException e) {
+            assertTrue(e.isConflict());
+        }
+        finally {
+            client.close();
+        }
+        assertTrue(views().has("other1"));
+        assertFalse(views().has("mine"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoConflictAttempts() throws Exception {
+        InterleavedClient client = interleaved(0);
+        try {
+            rollout(client).setConflictAttempts(0);
+        }
+        finally {
+            client.close();
+        }
+    }
+
+    private static StagedRollout rollout(CouchbaseAdminImpl client) {
+        StagedRollout rollout = new StagedRollout(client);
+        rollout.setPollInterval(10);
+        rollout.setStartTimeout(1000);
+        rollout.setTimeout(5000);
+        return rollout;
+    }
+
+    private JsonObject views() {
+        return cluster.getDesignDocument(BUCKET, DESIGN).getAsJsonObject("views");
+    }
+
+    private static ViewConfig view(String name) {
+        return DesignDocuments.view(BUCKET, DESIGN, name);
+    }
+
+    private InterleavedClient interleaved(int interleaved) {
+        return new InterleavedClient(cluster, new AdminClientConfig(), DESIGN, interleaved);
+    }
+}
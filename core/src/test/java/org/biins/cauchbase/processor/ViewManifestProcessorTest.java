@@ -0,0 +1,174 @@
+package org.biins.cauchbase.processor;
+
+import org.biins.cauchbase.metadata.ClassMetadata;
+import org.biins.cauchbase.metadata.ViewManifest;
+import org.biins.cauchbase.metadata.ViewMetadata;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ViewManifestProcessorTest {
+
+    private static final String SCRIPT = "/*\n * License header\n */\nfunction (doc) { emit(doc.name, null); }\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File sources;
+    private File classes;
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Before
+    public void setUp() throws IOException {
+        sources = folder.newFolder("src");
+        classes = folder.newFolder("classes");
+        write(new File(classes, "js/by_name.js"), SCRIPT);
+    }
+
+    @Test
+    public void inlinesAndHashesScripts() throws IOException {
+        assertTrue(compile(source("Beer", "@View(name = \"by_name\", map = \"classpath:/js/by_name.js\", reduce = \"_count\")", "")));
+
+        ViewMetadata view = find(manifest(), "p.Beer").getViews().get(0);
+        assertEquals(SCRIPT, view.getMap());
+        assertEquals("_count", view.getReduce());
+        assertTrue(view.isResolved());
+        assertNotNull(view.getHash());
+    }
+
+    @Test
+    public void acceptsFunctionsAfterComments() throws IOException {
+        assertTrue(compile(source("Beer", "",
+                "@View(name = \"commented\", map = \"// by id\\n/* all */ function (doc) { emit(doc.id); }\") public void id() {}")));
+
+        assertEquals("commented", find(manifest(), "p.Beer").getViews().get(0).getName());
+    }
+
+    @Test
+    public void failsOnMissingScript() throws IOException {
+        assertFalse(compile(source("Beer", "@View(name = \"missing\", map = \"classpath:/js/missing.js\")", "")));
+        assertError("Script classpath:/js/missing.js not found");
+    }
+
+    @Test
+    public void failsOnRelativeScriptPath() throws IOException {
+        assertFalse(compile(source("Beer", "@View(name = \"relative\", map = \"classpath:js/by_name.js\")", "")));
+        assertError("Set absolute classpath path");
+    }
+
+    @Test
+    public void failsOnInvalidFunctions() throws IOException {
+        assertFalse(compile(source("Beer", "@View(name = \"map\", map = \"emit(doc.id)\")", "")));
+        assertError("Map of view map must be a javascript function");
+
+        assertFalse(compile(source("Wine", "@View(name = \"reduce\", map = \"function (doc) {}\", reduce = \"_max\")", "")));
+        assertError("Reduce of view reduce must be a javascript function");
+    }
+
+    @Test
+    public void keepsReferencesWhenAskedTo() throws IOException {
+        assertTrue(compile(Arrays.asList("-A" + ViewManifestProcessor.SCRIPT_REFERENCES + "=true"),
+                source("Beer", "@View(name = \"by_name\", map = \"classpath:/js/by_name.js\")", ""),
+                source("Wine", "@View(name = \"missing\", map = \"classpath:/js/missing.js\")", "")));
+
+        ViewMetadata view = find(manifest(), "p.Beer").getViews().get(0);
+        assertEquals("classpath:/js/by_name.js", view.getMap());
+        assertFalse(view.isResolved());
+        boolean warned = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            warned |= diagnostic.getKind() == Diagnostic.Kind.WARNING
+                    && diagnostic.getMessage(null).contains("classpath:/js/missing.js not found");
+        }
+        assertTrue(warned);
+    }
+
+    @Test
+    public void isFunction() {
+        assertTrue(ViewManifestProcessor.isFunction("function (doc) {}"));
+        assertTrue(ViewManifestProcessor.isFunction("  // comment\n /* block\n */ function(doc, meta) {}"));
+        assertFalse(ViewManifestProcessor.isFunction("/* unterminated function (doc) {}"));
+        assertFalse(ViewManifestProcessor.isFunction("// function (doc) {}"));
+        assertFalse(ViewManifestProcessor.isFunction("emit(doc.id)"));
+    }
+
+    private File source(String name, String classAnnotation, String body) throws IOException {
+        File file = new File(sources, "p/" + name + ".java");
+        write(file, "package p;\n"
+                + "import org.biins.cauchbase.*;\n"
+                + "@Bucket(name = \"beers\", design = \"" + name.toLowerCase() + "\")\n"
+                + classAnnotation + "\n"
+                + "public class " + name + " {\n" + body + "\n}\n");
+        return file;
+    }
+
+    private boolean compile(File... files) throws IOException {
+        return compile(Collections.<String>emptyList(), files);
+    }
+
+    private boolean compile(List<String> extraOptions, File... files) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = new ArrayList<>(Arrays.asList(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-d", classes.getPath(),
+                    "-processor", ViewManifestProcessor.class.getName()));
+            options.addAll(extraOptions);
+            return compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjects(files)).call();
+        }
+    }
+
+    private void assertError(String message) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getMessage(null).contains(message)) {
+                return;
+            }
+        }
+        throw new AssertionError("No error " + message + " in " + diagnostics.getDiagnostics());
+    }
+
+    private ViewManifest manifest() throws IOException {
+        try (Reader reader = Files.newBufferedReader(new File(classes, ViewManifest.LOCATION).toPath(), StandardCharsets.UTF_8)) {
+            return ViewManifest.read(reader);
+        }
+    }
+
+    /**
+     * @return the class as written, {@link ViewManifest#get(String)} would read the scripts
+     */
+    private static ClassMetadata find(ViewManifest manifest, String className) {
+        for (ClassMetadata metadata : manifest.getClasses()) {
+            if (metadata.getClassName().equals(className)) {
+                return metadata;
+            }
+        }
+        throw new AssertionError(className + " not in the manifest");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,102 @@
+package org.biins.cauchbase.scanner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassFileReaderTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Inner {
+        String value();
+        long number() default 0;
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Outer {
+        Inner[] value();
+        Inner single();
+        double ratio() default 0;
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Marker {
+    }
+
+    @Outer(value = {@Inner(value = "a", number = 1L << 40), @Inner("b")}, single = @Inner("c"), ratio = 0.25)
+    @Marker
+    static class Annotated {
+        static final long LONG = 1L << 42;
+        static final double DOUBLE = 3.5;
+        static final String AFTER = "after the wide constants";
+
+        long sum(long value, double factor) {
+            return (long) (value * factor) + 9876543210L;
+        }
+    }
+
+    static class Plain {
+        static final long LONG = Long.MAX_VALUE;
+    }
+
+    @Test
+    public void readsAnnotationsAfterLongAndDoubleConstants() throws IOException {
+        ClassFileReader reader = read(Annotated.class);
+
+        assertEquals(Annotated.class.getName(), reader.getClassName());
+        assertFalse(reader.isAnnotationType());
+        assertEquals(Arrays.asList(descriptor(Outer.class), descriptor(Marker.class)), reader.getAnnotations());
+    }
+
+    @Test
+    public void readsClassWithoutAnnotations() throws IOException {
+        ClassFileReader reader = read(Plain.class);
+
+        assertEquals(Plain.class.getName(), reader.getClassName());
+        assertTrue(reader.getAnnotations().isEmpty());
+    }
+
+    @Test
+    public void readsAnnotationType() throws IOException {
+        ClassFileReader reader = read(Inner.class);
+
+        assertTrue(reader.isAnnotationType());
+        assertEquals(Arrays.asList(descriptor(Retention.class)), reader.getAnnotations());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        ClassFileReader.read(new ByteArrayInputStream(new byte[] {'P', 'K', 3, 4, 0, 0, 0, 0}));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedClassFile() throws IOException {
+        byte[] bytes = bytes(Annotated.class);
+        ClassFileReader.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+
+    private static ClassFileReader read(Class<?> cls) throws IOException {
+        return ClassFileReader.read(new ByteArrayInputStream(bytes(cls)));
+    }
+
+    private static byte[] bytes(Class<?> cls) throws IOException {
+        String resource = cls.getName().substring(cls.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = cls.getResourceAsStream(resource)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static String descriptor(Class<?> cls) {
+        return "L" + cls.getName().replace('.', '/') + ";";
+    }
+}
@@ -0,0 +1,159 @@
+package org.biins.cauchbase.state;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProvisioningStateTest {
+
+    private static final int HEADER = 8;
+    private static final int RECORD_HEADER = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsRecordsOverReopen() throws IOException {
+        File file = new File(folder.getRoot(), "state/provisioning.bin");
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            state.record("cluster", "beers/beer", "h1");
+            state.record("cluster", "beers/brewery", "h2");
+            state.record("cluster", "beers/beer", "h3");
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h3", state.get("cluster", "beers/beer"));
+            assertTrue(state.isRecorded("cluster", "beers/brewery", "h2"));
+            assertFalse(state.isRecorded("other", "beers/brewery", "h2"));
+        }
+    }
+
+    @Test
+    public void recoversFromTruncatedRecord() throws IOException {
+        File file = folder.newFile();
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            state.record("cluster", "beers/beer", "h1");
+            state.record("cluster", "beers/brewery", "h2");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(HEADER + recordSize("cluster", "beers/beer", "h1") + RECORD_HEADER + 3);
+        }
+
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h1", state.get("cluster", "beers/beer"));
+            assertNull(state.get("cluster", "beers/brewery"));
+            state.record("cluster", "beers/brewery", "h3");
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h1", state.get("cluster", "beers/beer"));
+            assertEquals("h3", state.get("cluster", "beers/brewery"));
+        }
+    }
+
+    @Test
+    public void dropsCorruptedRecordAndEverythingAfterIt() throws IOException {
+        File file = folder.newFile();
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            state.record("cluster", "beers/beer", "h1");
+            state.record("cluster", "beers/brewery", "h2");
+            state.record("cluster", "beers/style", "h3");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long payload = HEADER + recordSize("cluster", "beers/beer", "h1") + RECORD_HEADER;
+            raf.seek(payload);
+            int b = raf.read();
+            raf.seek(payload);
+            raf.write(b ^ 0xff);
+        }
+
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h1", state.get("cluster", "beers/beer"));
+            assertNull(state.get("cluster", "beers/brewery"));
+            assertNull(state.get("cluster", "beers/style"));
+            state.record("cluster", "beers/style", "h4");
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h4", state.get("cluster", "beers/style"));
+        }
+    }
+
+    @Test
+    public void startsEmptyWithUnknownFormat() throws IOException {
+        File file = folder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write("not a state file".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertNull(state.get("cluster", "beers/beer"));
+            state.record("cluster", "beers/beer", "h1");
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h1", state.get("cluster", "beers/beer"));
+        }
+    }
+
+    @Test
+    public void compactsSupersededRecords() throws IOException {
+        File file = folder.newFile();
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            for (int i = 0; i < 200; i++) {
+                state.record("cluster", "beers/beer", "h" + i);
+            }
+            state.record("cluster", "beers/brewery", "b");
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h199", state.get("cluster", "beers/beer"));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // only the two live records are left, the rest is zeroed
+            raf.seek(HEADER + recordSize("cluster", "beers/beer", "h199") + recordSize("cluster", "beers/brewery", "b"));
+            assertEquals(0, raf.readInt());
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertEquals("h199", state.get("cluster", "beers/beer"));
+            assertEquals("b", state.get("cluster", "beers/brewery"));
+        }
+    }
+
+    @Test
+    public void clearForgetsRecords() throws IOException {
+        File file = folder.newFile();
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            state.record("cluster", "beers/beer", "h1");
+            state.clear();
+            assertNull(state.get("cluster", "beers/beer"));
+        }
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            assertNull(state.get("cluster", "beers/beer"));
+        }
+    }
+
+    @Test
+    public void rejectsSecondOpen() throws IOException {
+        File file = folder.newFile();
+        try (ProvisioningState state = ProvisioningState.open(file)) {
+            try {
+                ProvisioningState.open(file).close();
+                fail("Opened twice");
+            }
+            catch (IOException e) {
+                assertTrue(e.getMessage().contains("used by another process"));
+            }
+        }
+    }
+
+    private static int recordSize(String clusterId, String key, String hash) {
+        return RECORD_HEADER + (clusterId + '\u0000' + key + '\u0000' + hash).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
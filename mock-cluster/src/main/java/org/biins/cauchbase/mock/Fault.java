@@ -0,0 +1,103 @@
+package org.biins.cauchbase.mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and errors injected by {@link MockCluster} into the requests whose path starts with a prefix.
+ * <pre>
+ * cluster.addFault(new Fault("/couchBase/").latency(20, 10));
+ * cluster.addFault(new Fault("GET", "/pools/default/buckets").error(503, 0.1));
+ * </pre>
+ */
+public class Fault {
+
+    private final String method;
+    private final String pathPrefix;
+
+    private long latency;
+    private long jitter;
+    private int status;
+    private double rate;
+
+    /**
+     * Fault of requests of any method.
+     */
+    public Fault(String pathPrefix) {
+        this(null, pathPrefix);
+    }
+
+    public Fault(String method, String pathPrefix) {
+        this.method = method;
+        this.pathPrefix = pathPrefix;
+    }
+
+    /**
+     * Delays matching requests.
+     */
+    public Fault latency(long millis) {
+        return latency(millis, 0);
+    }
+
+    /**
+     * Delays matching requests by {@code millis} plus a uniformly distributed random part up to {@code jitter}.
+     */
+    public Fault latency(long millis, long jitter) {
+        if (millis < 0 || jitter < 0) {
+            throw new IllegalArgumentException("Latency must not be negative");
+        }
+        this.latency = millis;
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Answers all matching requests with the status.
+     */
+    public Fault error(int status) {
+        return error(status, 1);
+    }
+
+    /**
+     * Answers the given fraction of matching requests with the status.
+     */
+    public Fault error(int status, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1");
+        }
+        this.status = status;
+        this.rate = rate;
+        return this;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    boolean matches(String method, String path) {
+        return (this.method == null || this.method.equalsIgnoreCase(method)) && path.startsWith(pathPrefix);
+    }
+
+    long delay() {
+        return jitter > 0 ? latency + ThreadLocalRandom.current().nextLong(jitter + 1) : latency;
+    }
+
+    /**
+     * @return the status to answer with, or 0 if the request should be served
+     */
+    int failure() {
+        if (status == 0 || rate == 0) {
+            return 0;
+        }
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate ? status : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Fault{" + (method != null ? method + " " : "") + pathPrefix
+                + ", latency=" + latency + "+" + jitter + ", status=" + status + ", rate=" + rate + '}';
+    }
+}
@@ -0,0 +1,75 @@
+package org.biins.cauchbase.mock;
+
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bucket of a {@link MockCluster} and its design documents.
+ */
+final class MockBucket {
+
+    private final String name;
+    private final String bucketType;
+    private final int ramQuotaMB;
+    private final int replicaNumber;
+    private final Map<String, MockDesignDocument> designs = new ConcurrentHashMap<>();
+
+    MockBucket(String name, String bucketType, int ramQuotaMB, int replicaNumber) {
+        this.name = name;
+        this.bucketType = bucketType;
+        this.ramQuotaMB = ramQuotaMB;
+        this.replicaNumber = replicaNumber;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Map<String, MockDesignDocument> getDesigns() {
+        return designs;
+    }
+
+    MockDesignDocument getDesign(String design) {
+        return designs.get(design);
+    }
+
+    /**
+     * Stores a new revision of the design document.
+     *
+     * @param rev revision the document was read at, null to overwrite any revision
+     * @return the new revision, or null if {@code rev} is not the current revision
+     */
+    synchronized MockDesignDocument putDesign(String design, JsonObject document, String rev, long indexBuildTime) {
+        MockDesignDocument current = designs.get(design);
+        if (rev != null && (current == null || !rev.equals(current.getRev()))) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        MockDesignDocument next = current == null
+                ? new MockDesignDocument(document, 1, now, now + indexBuildTime)
+                : current.update(document, now, indexBuildTime);
+        designs.put(design, next);
+        return next;
+    }
+
+    boolean deleteDesign(String design) {
+        return designs.remove(design) != null;
+    }
+
+    JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("name", name);
+        json.addProperty("bucketType", bucketType);
+        json.addProperty("authType", "sasl");
+        json.addProperty("saslPassword", "");
+        json.addProperty("uri", MockCluster.P_BUCKETS + "/" + name);
+        json.addProperty("replicaNumber", replicaNumber);
+        JsonObject quota = new JsonObject();
+        quota.addProperty("ram", ramQuotaMB * 1024L * 1024L);
+        quota.addProperty("rawRAM", ramQuotaMB * 1024L * 1024L);
+        json.add("quota", quota);
+        return json;
+    }
+}
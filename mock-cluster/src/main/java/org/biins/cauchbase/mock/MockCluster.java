@@ -0,0 +1,690 @@
+package org.biins.cauchbase.mock;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in of the REST API of a Couchbase cluster, to run the admin client and {@code AutoViews}
+ * in tests, load tests and benchmarks without a live cluster.
+ * <p>
+ * Serves the cluster information ({@code /pools}, {@code /pools/default}, {@code /pools/nodes},
+ * {@code /nodes/self}, {@code /pools/default/serverGroups}), the buckets ({@code /pools/default/buckets}),
+ * rebalance progress, task listings, design documents ({@code /couchBase/{bucket}/_design/{design}}) and
+ * view queries. Buckets and design documents are kept in memory, view queries return no rows. Credentials
+ * are not checked.
+ * <p>
+ * Writing a design document with changed views starts an index build lasting
+ * {@link #setIndexBuildTime(long) indexBuildTime}. While it runs, the build is listed by
+ * {@code /pools/default/tasks} and {@code /_active_tasks} and {@code stale=false} queries wait for it.
+ * As by Couchbase 3.x, a design document is served without {@code _id} and {@code _rev}, they are sent in the
+ * {@value #META_HEADER} header. A design document written with a {@code _rev} other than the current one is
+ * rejected with 409.
+ * Latency and errors are injected by {@link Fault}s.
+ * <p>
+ * The first node of the cluster is the server itself. Further nodes of {@link #setNodes(int)} are listed
+ * with their own loopback addresses, nothing listens there.
+ * <p>
+ * The JDK server leaves Nagle's algorithm on, so small responses wait for the delayed acknowledgements of
+ * the client. Run latency-sensitive tests with {@code -Dsun.net.httpserver.nodelay=true}.
+ * <pre>
+ * try (MockCluster cluster = new MockCluster().start()) {
+ *     cluster.createBucket("default");
+ *     cluster.setIndexBuildTime(500);
+ *     cluster.addFault(new Fault("/couchBase/").latency(5));
+ *     CouchbaseAdmin client = new CouchbaseAdminImpl(cluster.getUrl(), "Administrator", "password");
+ *     ...
+ * }
+ * </pre>
+ */
+public class MockCluster implements Closeable {
+
+    public static final String VERSION = "3.0.1-1444-rel-enterprise";
+    public static final String META_HEADER = "X-Couchbase-Meta";
+
+    static final String P_POOLS = "/pools";
+    static final String P_POOLS_DEFAULT = "/pools/default";
+    static final String P_POOL_NODES = "/pools/nodes";
+    static final String P_NODES_SELF = "/nodes/self";
+    static final String P_SERVER_GROUPS = "/pools/default/serverGroups";
+    static final String P_BUCKETS = "/pools/default/buckets";
+    static final String P_REBALANCE_PROGRESS = "/pools/default/rebalanceProgress";
+    static final String P_TASKS = "/pools/default/tasks";
+    static final String P_ACTIVE_TASKS = "/_active_tasks";
+    static final String P_COUCH = "/couchBase/";
+
+    private static final int COMPATIBILITY = 0x30000;
+    private static final int TOTAL_CHANGES = 1000;
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final AtomicInteger serverCount = new AtomicInteger();
+
+    private final String uuid = UUID.randomUUID().toString().replace("-", "");
+    private final Map<String, MockBucket> buckets = new ConcurrentSkipListMap<>();
+    private final List<Fault> faults = new CopyOnWriteArrayList<>();
+    private final Map<String, byte[]> cache = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+
+    private volatile int nodes = 1;
+    private volatile long indexBuildTime = 0;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Starts the server on an ephemeral loopback port.
+     */
+    public MockCluster start() throws IOException {
+        return start(0);
+    }
+
+    public synchronized MockCluster start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        String name = "mock-cluster-" + serverCount.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        // handlers sleep for injected latency and index builds, threads are not limited
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        invalidate(null);
+        return this;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    public URL getUrl() {
+        try {
+            return new URL("http", host(0), getPort(), "/");
+        }
+        catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Number of nodes listed by the cluster, 1 by default.
+     */
+    public void setNodes(int nodes) {
+        if (nodes < 1) {
+            throw new IllegalArgumentException("Cluster needs a node");
+        }
+        this.nodes = nodes;
+        invalidate(null);
+    }
+
+    /**
+     * Duration of the index build started by a change of views, in millis. 0 by default.
+     */
+    public void setIndexBuildTime(long indexBuildTime) {
+        this.indexBuildTime = indexBuildTime;
+    }
+
+    public void addFault(Fault fault) {
+        faults.add(fault);
+    }
+
+    public void removeFault(Fault fault) {
+        faults.remove(fault);
+    }
+
+    public void clearFaults() {
+        faults.clear();
+    }
+
+    /**
+     * @return number of requests received since start
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Creates a Couchbase bucket with 100MB of RAM and no replicas.
+     */
+    public void createBucket(String name) {
+        createBucket(name, "membase", 100, 0);
+    }
+
+    public void createBucket(String name, String bucketType, int ramQuotaMB, int replicaNumber) {
+        if (buckets.putIfAbsent(name, new MockBucket(name, bucketType, ramQuotaMB, replicaNumber)) != null) {
+            throw new IllegalArgumentException("Bucket " + name + " already exists");
+        }
+        invalidate(P_BUCKETS);
+    }
+
+    public boolean deleteBucket(String name) {
+        boolean deleted = buckets.remove(name) != null;
+        invalidate(P_BUCKETS);
+        return deleted;
+    }
+
+    public Set<String> getBucketNames() {
+        return Collections.unmodifiableSet(buckets.keySet());
+    }
+
+    /**
+     * @return the design document with its {@code _id} and {@code _rev}, or null if it doesn't exist
+     */
+    public JsonObject getDesignDocument(String bucket, String design) {
+        MockBucket mockBucket = buckets.get(bucket);
+        MockDesignDocument document = mockBucket != null ? mockBucket.getDesign(design) : null;
+        return document != null ? document.toJson(design) : null;
+    }
+
+    /**
+     * Writes the design document as a client would, starting an index build if its views changed.
+     */
+    public void putDesignDocument(String bucket, String design, JsonObject document) {
+        MockBucket mockBucket = buckets.get(bucket);
+        if (mockBucket == null) {
+            throw new IllegalArgumentException("No bucket " + bucket);
+        }
+        mockBucket.putDesign(design, withoutMeta(document), null, indexBuildTime);
+    }
+
+    /**
+     * Deletes all design documents of all buckets.
+     */
+    public void clearDesignDocuments() {
+        for (MockBucket bucket : buckets.values()) {
+            bucket.getDesigns().clear();
+        }
+    }
+
+    public boolean isIndexBuilding(String bucket, String design) {
+        MockBucket mockBucket = buckets.get(bucket);
+        MockDesignDocument document = mockBucket != null ? mockBucket.getDesign(design) : null;
+        return document != null && document.isBuilding(System.currentTimeMillis());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Response response = injectFaults(method, path);
+            if (response == null) {
+                response = route(exchange, method, path);
+            }
+            send(exchange, response);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            send(exchange, error(500, "internal_error", e.toString()));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private Response injectFaults(String method, String path) throws InterruptedException {
+        for (Fault fault : faults) {
+            if (!fault.matches(method, path)) {
+                continue;
+            }
+            long delay = fault.delay();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            int status = fault.failure();
+            if (status != 0) {
+                return error(status, "injected", fault.toString());
+            }
+        }
+        return null;
+    }
+
+    private Response route(HttpExchange exchange, String method, String path)
+            throws IOException, InterruptedException {
+        switch (path) {
+            case P_POOLS:
+                return cached(P_POOLS, this::pools);
+            case P_POOLS_DEFAULT:
+                return cached(P_POOLS_DEFAULT, this::pool);
+            case P_POOL_NODES:
+                return cached(P_POOL_NODES, this::pool);
+            case P_NODES_SELF:
+                return cached(P_NODES_SELF, () -> node(0));
+            case P_SERVER_GROUPS:
+                return cached(P_SERVER_GROUPS, this::serverGroups);
+            case P_REBALANCE_PROGRESS:
+                return json(200, object("status", "none"));
+            case P_TASKS:
+                return json(200, clusterTasks());
+            case P_ACTIVE_TASKS:
+                return json(200, activeTasks());
+            case P_BUCKETS:
+                if (method.equals("POST")) {
+                    return createBucket(readForm(exchange));
+                }
+                return cached(P_BUCKETS, this::bucketList);
+        }
+        if (path.startsWith(P_BUCKETS + "/")) {
+            return bucket(method, path.substring(P_BUCKETS.length() + 1));
+        }
+        if (path.startsWith(P_COUCH)) {
+            return couch(exchange, method, path.substring(P_COUCH.length()));
+        }
+        return error(404, "not_found", "missing");
+    }
+
+    private Response bucket(String method, String name) {
+        MockBucket bucket = buckets.get(name);
+        if (bucket == null) {
+            return error(404, "not_found", "Requested resource not found.");
+        }
+        if (method.equals("DELETE")) {
+            deleteBucket(name);
+            return new Response(200, EMPTY);
+        }
+        return json(200, bucket.toJson());
+    }
+
+    private Response createBucket(Map<String, String> form) {
+        String name = form.get("name");
+        if (name == null || name.isEmpty()) {
+            return json(400, object("errors", object("name", "Bucket name cannot be empty")));
+        }
+        try {
+            createBucket(name, form.getOrDefault("bucketType", "membase"),
+                    Integer.parseInt(form.getOrDefault("ramQuotaMB", "100")),
+                    Integer.parseInt(form.getOrDefault("replicaNumber", "1")));
+        }
+        catch (NumberFormatException e) {
+            return json(400, object("errors", object("ramQuotaMB", "The RAM Quota must be a number")));
+        }
+        catch (IllegalArgumentException e) {
+            return json(400, object("errors", object("name", "Bucket with given name already exists")));
+        }
+        return new Response(202, EMPTY);
+    }
+
+    /**
+     * Handles {@code {bucket}/_design/{design}} and {@code {bucket}/_design/{design}/_view/{view}}.
+     */
+    private Response couch(HttpExchange exchange, String method, String path)
+            throws IOException, InterruptedException {
+        String[] parts = path.split("/");
+        if (parts.length < 3 || !parts[1].equals("_design")) {
+            return error(404, "not_found", "missing");
+        }
+        MockBucket bucket = buckets.get(parts[0]);
+        if (bucket == null) {
+            return error(404, "not_found", "no_db_file");
+        }
+        String design = parts[2];
+        if (parts.length == 5 && parts[3].equals("_view")) {
+            return query(bucket, design, parts[4], exchange.getRequestURI().getRawQuery());
+        }
+        if (parts.length != 3) {
+            return error(404, "not_found", "missing");
+        }
+
+        switch (method) {
+            case "GET":
+                MockDesignDocument document = bucket.getDesign(design);
+                if (document == null) {
+                    return error(404, "not_found", "missing");
+                }
+                return new Response(200, document.toBytes())
+                        .header(META_HEADER, document.toMeta(design).toString());
+            case "PUT":
+                JsonObject body;
+                try {
+                    body = new JsonParser().parse(new String(readBody(exchange), StandardCharsets.UTF_8))
+                            .getAsJsonObject();
+                }
+                catch (JsonParseException | IllegalStateException e) {
+                    return error(400, "bad_request", "invalid UTF-8 JSON");
+                }
+                JsonElement rev = body.get("_rev");
+                MockDesignDocument written = bucket.putDesign(design, withoutMeta(body),
+                        rev != null && !rev.isJsonNull() ? rev.getAsString() : null, indexBuildTime);
+                if (written == null) {
+                    return error(409, "conflict", "Document update conflict.");
+                }
+                JsonObject ok = object("ok", true);
+                ok.addProperty("id", "_design/" + design);
+                ok.addProperty("rev", written.getRev());
+                return json(201, ok);
+            case "DELETE":
+                if (!bucket.deleteDesign(design)) {
+                    return error(404, "not_found", "missing");
+                }
+                JsonObject deleted = object("ok", true);
+                deleted.addProperty("id", "_design/" + design);
+                return json(200, deleted);
+            default:
+                return error(405, "method_not_allowed", "Only GET,PUT,DELETE allowed");
+        }
+    }
+
+    private Response query(MockBucket bucket, String design, String view, String query) throws InterruptedException {
+        MockDesignDocument document = bucket.getDesign(design);
+        if (document == null) {
+            return error(404, "not_found", "missing");
+        }
+        if (!document.hasView(view)) {
+            return error(404, "not_found", "missing_named_view");
+        }
+        if ("false".equals(parseQuery(query).get("stale"))) {
+            long wait = document.getBuiltAt() - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+        }
+        JsonObject result = new JsonObject();
+        result.addProperty("total_rows", 0);
+        result.add("rows", new JsonArray());
+        return json(200, result);
+    }
+
+    private JsonObject pools() {
+        JsonObject pool = object("name", "default");
+        pool.addProperty("uri", P_POOLS_DEFAULT + "?uuid=" + uuid);
+        pool.addProperty("streamingUri", "/poolsStreaming/default?uuid=" + uuid);
+        JsonArray pools = new JsonArray();
+        pools.add(pool);
+
+        JsonObject json = object("isAdminCreds", true);
+        json.addProperty("isROAdminCreds", false);
+        json.add("pools", pools);
+        json.addProperty("uuid", uuid);
+        json.addProperty("implementationVersion", VERSION);
+        return json;
+    }
+
+    private JsonObject pool() {
+        JsonObject json = object("name", "default");
+        json.add("nodes", nodeList());
+        json.add("buckets", object("uri", P_BUCKETS + "?v=1&uuid=" + uuid));
+        json.addProperty("rebalanceStatus", "none");
+        json.addProperty("serverGroupsUri", P_SERVER_GROUPS + "?v=1");
+        return json;
+    }
+
+    private JsonObject serverGroups() {
+        JsonObject group = object("name", "Group 1");
+        group.addProperty("uri", P_SERVER_GROUPS + "/0");
+        group.add("nodes", nodeList());
+        JsonArray groups = new JsonArray();
+        groups.add(group);
+
+        JsonObject json = object("uri", P_SERVER_GROUPS + "?rev=1");
+        json.add("groups", groups);
+        return json;
+    }
+
+    private JsonArray nodeList() {
+        JsonArray list = new JsonArray();
+        for (int i = 0; i < nodes; i++) {
+            list.add(node(i));
+        }
+        return list;
+    }
+
+    private JsonObject node(int i) {
+        String address = host(i) + ":" + getPort();
+        JsonObject node = object("hostname", address);
+        node.addProperty("couchApiBase", "http://" + address + "/");
+        node.addProperty("clusterMembership", "active");
+        node.addProperty("status", "healthy");
+        node.addProperty("otpNode", "ns_1@" + host(i));
+        node.addProperty("thisNode", i == 0);
+        node.addProperty("clusterCompatibility", COMPATIBILITY);
+        node.addProperty("version", VERSION);
+        node.addProperty("os", "x86_64-unknown-linux-gnu");
+        return node;
+    }
+
+    /**
+     * 127.0.0.1 for the server, further loopback addresses for the listed nodes.
+     */
+    private static String host(int i) {
+        int n = i + 1;
+        return "127." + (n >> 16 & 0xff) + "." + (n >> 8 & 0xff) + "." + (n & 0xff);
+    }
+
+    private JsonArray bucketList() {
+        JsonArray list = new JsonArray();
+        for (MockBucket bucket : buckets.values()) {
+            list.add(bucket.toJson());
+        }
+        return list;
+    }
+
+    private JsonArray clusterTasks() {
+        JsonObject rebalance = object("type", "rebalance");
+        rebalance.addProperty("status", "notRunning");
+        JsonArray tasks = new JsonArray();
+        tasks.add(rebalance);
+
+        long now = System.currentTimeMillis();
+        for (MockBucket bucket : buckets.values()) {
+            for (Map.Entry<String, MockDesignDocument> entry : bucket.getDesigns().entrySet()) {
+                MockDesignDocument document = entry.getValue();
+                if (document.isBuilding(now)) {
+                    int progress = document.progress(now);
+                    JsonObject task = object("type", "indexer");
+                    task.addProperty("status", "running");
+                    task.addProperty("bucket", bucket.getName());
+                    task.addProperty("designDocument", "_design/" + entry.getKey());
+                    task.addProperty("progress", progress);
+                    task.addProperty("changesDone", progress * TOTAL_CHANGES / 100);
+                    task.addProperty("totalChanges", TOTAL_CHANGES);
+                    tasks.add(task);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    private JsonArray activeTasks() {
+        JsonArray tasks = new JsonArray();
+        long now = System.currentTimeMillis();
+        for (MockBucket bucket : buckets.values()) {
+            for (Map.Entry<String, MockDesignDocument> entry : bucket.getDesigns().entrySet()) {
+                MockDesignDocument document = entry.getValue();
+                if (document.isBuilding(now)) {
+                    int progress = document.progress(now);
+                    JsonArray designs = new JsonArray();
+                    designs.add(new JsonPrimitive("_design/" + entry.getKey()));
+                    JsonObject task = object("type", "indexer");
+                    task.addProperty("set", bucket.getName());
+                    task.add("design_documents", designs);
+                    task.addProperty("progress", progress);
+                    task.addProperty("changes_done", progress * TOTAL_CHANGES / 100);
+                    task.addProperty("total_changes", TOTAL_CHANGES);
+                    task.addProperty("started_on", document.getBuildStarted() / 1000);
+                    tasks.add(task);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    private static JsonObject withoutMeta(JsonObject document) {
+        JsonObject copy = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : document.entrySet()) {
+            if (!entry.getKey().equals("_id") && !entry.getKey().equals("_rev")) {
+                copy.add(entry.getKey(), entry.getValue());
+            }
+        }
+        return copy;
+    }
+
+    private Response cached(String key, Supplier<JsonElement> json) {
+        byte[] body = cache.get(key);
+        if (body == null) {
+            synchronized (cache) {
+                body = cache.get(key);
+                if (body == null) {
+                    body = json.get().toString().getBytes(StandardCharsets.UTF_8);
+                    cache.put(key, body);
+                }
+            }
+        }
+        return new Response(200, body);
+    }
+
+    /**
+     * Drops a cached response after the state it was built from changed.
+     */
+    private void invalidate(String key) {
+        synchronized (cache) {
+            if (key != null) {
+                cache.remove(key);
+            }
+            else {
+                cache.clear();
+            }
+        }
+    }
+
+    private static JsonObject object(String name, String value) {
+        JsonObject json = new JsonObject();
+        json.addProperty(name, value);
+        return json;
+    }
+
+    private static JsonObject object(String name, boolean value) {
+        JsonObject json = new JsonObject();
+        json.addProperty(name, value);
+        return json;
+    }
+
+    private static JsonObject object(String name, JsonElement value) {
+        JsonObject json = new JsonObject();
+        json.add(name, value);
+        return json;
+    }
+
+    private static Response json(int status, JsonElement json) {
+        return new Response(status, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Response error(int status, String error, String reason) {
+        JsonObject json = object("error", error);
+        json.addProperty("reason", reason);
+        return json(status, json);
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        return parseQuery(new String(readBody(exchange), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> params = new HashMap<>();
+        try {
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq > 0) {
+                    params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+        }
+        if (response.body.length > 0) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+        // -1 answers without a body, 0 would switch to chunked encoding
+        exchange.sendResponseHeaders(response.status, response.body.length > 0 ? response.body.length : -1);
+        if (response.body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body);
+            }
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final byte[] body;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.biins.cauchbase.mock;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Immutable revision of a design document kept by {@link MockCluster}, together with the build of its index.
+ */
+final class MockDesignDocument {
+
+    private final JsonObject document;
+    private final JsonObject views;
+    private final int generation;
+    private final String rev;
+    private final long buildStarted;
+    private final long builtAt;
+    private volatile byte[] serialized;
+
+    /**
+     * @param document design document without {@code _id} and {@code _rev}
+     */
+    MockDesignDocument(JsonObject document, int generation, long buildStarted, long builtAt) {
+        this.document = document;
+        JsonElement views = document.get("views");
+        this.views = views != null && views.isJsonObject() ? views.getAsJsonObject() : new JsonObject();
+        this.generation = generation;
+        this.rev = generation + "-" + String.format("%08x", document.toString().hashCode());
+        this.buildStarted = buildStarted;
+        this.builtAt = builtAt;
+    }
+
+    /**
+     * Next revision of the document, the index is rebuilt only if the views changed.
+     */
+    MockDesignDocument update(JsonObject document, long now, long indexBuildTime) {
+        MockDesignDocument next = new MockDesignDocument(document, generation + 1, buildStarted, builtAt);
+        if (next.views.equals(views)) {
+            return next;
+        }
+        return new MockDesignDocument(document, generation + 1, now, now + indexBuildTime);
+    }
+
+    String getRev() {
+        return rev;
+    }
+
+    boolean hasView(String view) {
+        return views.has(view);
+    }
+
+    long getBuildStarted() {
+        return buildStarted;
+    }
+
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    boolean isBuilding(long now) {
+        return builtAt > now;
+    }
+
+    /**
+     * @return progress of the index build in percent
+     */
+    int progress(long now) {
+        if (!isBuilding(now)) {
+            return 100;
+        }
+        return (int) ((now - buildStarted) * 100 / (builtAt - buildStarted));
+    }
+
+    JsonObject toJson(String design) {
+        JsonObject json = new JsonObject();
+        json.addProperty("_id", "_design/" + design);
+        json.addProperty("_rev", rev);
+        for (Map.Entry<String, JsonElement> entry : document.entrySet()) {
+            json.add(entry.getKey(), entry.getValue());
+        }
+        return json;
+    }
+
+    /**
+     * @return content of the {@code X-Couchbase-Meta} header of a {@code GET} of the design document
+     */
+    JsonObject toMeta(String design) {
+        JsonObject meta = new JsonObject();
+        meta.addProperty("id", "_design/" + design);
+        meta.addProperty("rev", rev);
+        meta.addProperty("type", "json");
+        return meta;
+    }
+
+    /**
+     * @return the response body of a {@code GET} of the design document, without {@code _id} and {@code _rev}
+     */
+    byte[] toBytes() {
+        byte[] bytes = serialized;
+        if (bytes == null) {
+            bytes = document.toString().getBytes(StandardCharsets.UTF_8);
+            serialized = bytes;
+        }
+        return bytes;
+    }
+}